@@ -2,6 +2,8 @@ package com.nuist.setu.killbill;
 
 import android.app.Application;
 
+import com.nuist.setu.killbill.util.DateTimeUtils;
+
 /**
  * Application class.
  *
@@ -11,6 +13,8 @@ public class KillBillApp extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
+        // Runs in the :listener process too, which buckets timestamps as well
+        DateTimeUtils.registerTimeZoneListener(this);
         // We create NotificationChannels inside the NotificationListenerService
     }
 }
@@ -2,20 +2,108 @@ package com.nuist.setu.killbill.data;
 
 import android.content.Context;
 
+import androidx.annotation.NonNull;
 import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 
 /**
  * Room database.
  */
-@Database(entities = {Bill.class}, version = 1, exportSchema = false)
+@Database(entities = {Bill.class, CategoryStats.class}, version = 5, exportSchema = false)
 public abstract class AppDatabase extends RoomDatabase {
 
     private static volatile AppDatabase INSTANCE;
 
     public abstract BillDao billDao();
 
+    public abstract CategoryStatsDao categoryStatsDao();
+
+    /**
+     * v2: rolling per-category statistics for anomaly detection, seeded from existing bills
+     * so upgraded installs don't start without a baseline.
+     */
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE TABLE IF NOT EXISTS `category_stats` (" +
+                    "`category` TEXT NOT NULL, " +
+                    "`period` TEXT NOT NULL, " +
+                    "`count` INTEGER NOT NULL, " +
+                    "`mean` REAL NOT NULL, " +
+                    "`m2` REAL NOT NULL, " +
+                    "`bucketStart` INTEGER NOT NULL, " +
+                    "`bucketEnd` INTEGER NOT NULL, " +
+                    "`bucketTotal` REAL NOT NULL, " +
+                    "`anomalous` INTEGER NOT NULL, " +
+                    "PRIMARY KEY(`category`, `period`))");
+            seedCategoryStats(db, CategoryStats.PERIOD_DAY, "", "+1 day");
+            seedCategoryStats(db, CategoryStats.PERIOD_WEEK, ", 'weekday 0', '-6 days'", "+7 days");
+        }
+    };
+
+    /**
+     * What {@link SpendingAnomalyEngine} would have built adding every bill in order: per
+     * category, the latest bucket with bills is the open one, and the totals of the earlier
+     * buckets are the closed samples (count, mean, sum of squared deviations). Buckets are in
+     * local time like {@link com.nuist.setu.killbill.util.DateTimeUtils}, weeks from Monday.
+     *
+     * @param startModifiers date() modifiers from a bill's local day to its bucket's first day
+     * @param length         date() modifier from a bucket's first day to the next bucket's
+     */
+    private static void seedCategoryStats(SupportSQLiteDatabase db, String period,
+                                          String startModifiers, String length) {
+        db.execSQL("INSERT OR REPLACE INTO `category_stats` (`category`, `period`, `count`, " +
+                "`mean`, `m2`, `bucketStart`, `bucketEnd`, `bucketTotal`, `anomalous`) " +
+                "WITH buckets AS (" +
+                "  SELECT category, CAST(strftime('%s', date(timestamp / 1000, 'unixepoch', " +
+                "'localtime'" + startModifiers + "), 'utc') AS INTEGER) * 1000 AS start, " +
+                "SUM(amount) AS total FROM bills GROUP BY category, start), " +
+                "latest AS (" +
+                "  SELECT category, start, total FROM buckets b " +
+                "  WHERE start = (SELECT MAX(start) FROM buckets WHERE category = b.category)) " +
+                "SELECT l.category, '" + period + "', COUNT(c.total), COALESCE(AVG(c.total), 0), " +
+                "MAX(0, COALESCE(SUM(c.total * c.total) - SUM(c.total) * SUM(c.total) / COUNT(c.total), 0)), " +
+                "l.start, CAST(strftime('%s', date(l.start / 1000, 'unixepoch', 'localtime', '" +
+                length + "'), 'utc') AS INTEGER) * 1000, l.total, 0 " +
+                "FROM latest l LEFT JOIN buckets c " +
+                "ON c.category = l.category AND c.start < l.start AND c.total > 0 " +
+                "GROUP BY l.category");
+    }
+
+    /**
+     * v3: review flag for bills recorded directly from notifications.
+     */
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("ALTER TABLE `bills` ADD COLUMN `needsReview` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    /**
+     * v4: index for "recent AUTO bills" duplicate checks.
+     */
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_bills_source_timestamp` " +
+                    "ON `bills` (`source`, `timestamp`)");
+        }
+    };
+
+    /**
+     * v5: index for date-range scans (daily/monthly lists, the year heatmap).
+     */
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase db) {
+            db.execSQL("CREATE INDEX IF NOT EXISTS `index_bills_timestamp` ON `bills` (`timestamp`)");
+        }
+    };
+
     public static AppDatabase getInstance(Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
@@ -24,7 +112,11 @@ public abstract class AppDatabase extends RoomDatabase {
                                     context.getApplicationContext(),
                                     AppDatabase.class,
                                     "killbill.db")
+                            .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5)
                             .fallbackToDestructiveMigration()
+                            // No multi-instance invalidation: its service lives in the UI
+                            // process and the :listener process would bind (and start) it.
+                            // The UI picks up listener writes through ListenerWrites instead.
                             .build();
                 }
             }
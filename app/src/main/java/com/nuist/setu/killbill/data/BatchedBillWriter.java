@@ -0,0 +1,109 @@
+package com.nuist.setu.killbill.data;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Group-commit writer for bills captured in the background.
+ *
+ * A bill is handed to the io executor as soon as it arrives; bills that arrive while a
+ * flush is queued or running are committed together in the next transaction. A single
+ * payment is committed within milliseconds, a burst costs one transaction per batch.
+ *
+ * AUTO bills that match one already stored (same amount, app and note within
+ * {@link #DUPLICATE_WINDOW_MS}) are dropped, e.g. when the listener restarts and
+ * sees the same notification, with the same post time, again. The window is short so
+ * two real payments of the same amount a minute apart are both kept.
+ */
+class BatchedBillWriter {
+
+    static final long DUPLICATE_WINDOW_MS = 8 * 1000L;
+
+    private final AppDatabase db;
+    private final BillDao billDao;
+    private final SpendingAnomalyEngine anomalyEngine;
+    private final Executor executor;
+
+    private static final class Pending {
+        final Bill bill;
+        @Nullable
+        final Runnable onCommitted;
+
+        Pending(Bill bill, @Nullable Runnable onCommitted) {
+            this.bill = bill;
+            this.onCommitted = onCommitted;
+        }
+    }
+
+    private final ConcurrentLinkedQueue<Pending> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    BatchedBillWriter(@NonNull AppDatabase db,
+                      @NonNull SpendingAnomalyEngine anomalyEngine,
+                      @NonNull Executor executor) {
+        this.db = db;
+        this.billDao = db.billDao();
+        this.anomalyEngine = anomalyEngine;
+        this.executor = executor;
+    }
+
+    void enqueue(@NonNull Bill bill, @Nullable Runnable onCommitted) {
+        pending.add(new Pending(bill, onCommitted));
+        if (flushScheduled.compareAndSet(false, true)) {
+            executor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        // Clear the flag before draining: anything enqueued after this point schedules
+        // its own flush instead of being stranded in the queue.
+        flushScheduled.set(false);
+
+        List<Bill> batch = new ArrayList<>();
+        List<Runnable> done = new ArrayList<>();
+        Pending p;
+        while ((p = pending.poll()) != null) {
+            batch.add(p.bill);
+            if (p.onCommitted != null) done.add(p.onCommitted);
+        }
+        if (batch.isEmpty()) return;
+
+        commit(batch);
+        for (Runnable callback : done) {
+            callback.run();
+        }
+    }
+
+    private void commit(List<Bill> batch) {
+        db.runInTransaction(() -> {
+            List<Bill> fresh = new ArrayList<>(batch.size());
+            for (Bill bill : batch) {
+                if (!isStoredDuplicate(bill)) fresh.add(bill);
+            }
+            if (fresh.isEmpty()) return;
+
+            List<Long> ids = billDao.insertAll(fresh);
+            for (int i = 0; i < fresh.size(); i++) {
+                Bill bill = fresh.get(i);
+                bill.id = ids.get(i);
+                anomalyEngine.onBillAdded(bill);
+            }
+        });
+    }
+
+    private boolean isStoredDuplicate(Bill bill) {
+        if (!"AUTO".equals(bill.source)) return false;
+        return billDao.countAutoBillsLike(
+                bill.amount,
+                bill.paymentApp,
+                bill.note,
+                bill.timestamp - DUPLICATE_WINDOW_MS,
+                bill.timestamp + DUPLICATE_WINDOW_MS) > 0;
+    }
+}
@@ -2,7 +2,9 @@ package com.nuist.setu.killbill.data;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.room.ColumnInfo;
 import androidx.room.Entity;
+import androidx.room.Index;
 import androidx.room.PrimaryKey;
 
 /**
@@ -10,7 +12,8 @@ import androidx.room.PrimaryKey;
  * timestamp: Unix time millis.
  * receiptUri: Uri string for a receipt photo captured by camera (optional).
  */
-@Entity(tableName = "bills")
+@Entity(tableName = "bills",
+        indices = {@Index(value = {"source", "timestamp"}), @Index(value = {"timestamp"})})
 public class Bill {
 
     @PrimaryKey(autoGenerate = true)
@@ -41,6 +44,12 @@ public class Bill {
     @Nullable
     public String paymentApp;
 
+    /**
+     * true for AUTO bills written straight from a notification that the user hasn't confirmed yet.
+     */
+    @ColumnInfo(defaultValue = "0")
+    public boolean needsReview;
+
     public Bill(double amount,
                 @NonNull String category,
                 @Nullable String note,
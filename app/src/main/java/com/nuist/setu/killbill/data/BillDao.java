@@ -5,6 +5,7 @@ import androidx.room.Dao;
 import androidx.room.Delete;
 import androidx.room.Insert;
 import androidx.room.Query;
+import androidx.room.Transaction;
 import androidx.room.Update;
 
 import java.util.List;
@@ -15,6 +16,9 @@ public interface BillDao {
     @Insert
     long insert(Bill bill);
 
+    @Insert
+    List<Long> insertAll(List<Bill> bills);
+
     @Update
     void update(Bill bill);
 
@@ -30,6 +34,32 @@ public interface BillDao {
     @Query("SELECT * FROM bills WHERE timestamp >= :start AND timestamp < :endExclusive ORDER BY timestamp DESC")
     LiveData<List<Bill>> getBillsBetween(long start, long endExclusive);
 
+    @Query("SELECT * FROM bills WHERE timestamp >= :start AND timestamp < :endExclusive ORDER BY timestamp DESC")
+    List<Bill> getBillsBetweenOnce(long start, long endExclusive);
+
+    @Query("SELECT :start AS dayStart, COALESCE(SUM(amount), 0) AS total, COUNT(*) AS count " +
+            "FROM bills " +
+            "WHERE timestamp >= :start AND timestamp < :endExclusive")
+    DayTotal getTotalBetweenOnce(long start, long endExclusive);
+
+    @Query("SELECT category AS category, SUM(amount) AS total " +
+            "FROM bills " +
+            "WHERE timestamp >= :start AND timestamp < :endExclusive " +
+            "GROUP BY category " +
+            "ORDER BY total DESC")
+    List<CategoryTotal> getCategoryTotalsBetweenOnce(long start, long endExclusive);
+
+    /**
+     * Rows, total, count and category breakdown of one range, consistent with each other.
+     */
+    @Transaction
+    default DaySnapshot getDaySnapshot(long start, long endExclusive) {
+        List<Bill> bills = getBillsBetweenOnce(start, endExclusive);
+        DayTotal total = getTotalBetweenOnce(start, endExclusive);
+        return new DaySnapshot(bills, total.total, total.count,
+                getCategoryTotalsBetweenOnce(start, endExclusive));
+    }
+
     @Query("SELECT category AS category, SUM(amount) AS total " +
             "FROM bills " +
             "WHERE timestamp >= :start AND timestamp < :endExclusive " +
@@ -37,6 +67,84 @@ public interface BillDao {
             "ORDER BY total DESC")
     LiveData<List<CategoryTotal>> getCategoryTotalsBetween(long start, long endExclusive);
 
+    /**
+     * The {@code top} largest categories, then one {@code otherLabel} row with the sum of
+     * the rest (omitted if there is no rest), so callers get at most top + 1 rows.
+     */
+    @Query("SELECT category, total FROM (" +
+            "SELECT category AS category, SUM(amount) AS total FROM bills " +
+            "WHERE timestamp >= :start AND timestamp < :endExclusive " +
+            "GROUP BY category ORDER BY total DESC, category LIMIT :top) " +
+            "UNION ALL " +
+            "SELECT :otherLabel AS category, total FROM (" +
+            "SELECT SUM(total) AS total, COUNT(*) AS n FROM (" +
+            "SELECT SUM(amount) AS total FROM bills " +
+            "WHERE timestamp >= :start AND timestamp < :endExclusive " +
+            "GROUP BY category ORDER BY total DESC, category LIMIT -1 OFFSET :top)) " +
+            "WHERE n > 0")
+    LiveData<List<CategoryTotal>> getTopCategoryTotalsBetween(long start, long endExclusive,
+                                                              int top, String otherLabel);
+
+    /**
+     * Spending per local day of the year, days without bills omitted: at most 366 rows
+     * from one range scan over the timestamp index.
+     */
+    @Query("SELECT CAST(strftime('%j', timestamp / 1000, 'unixepoch', 'localtime') AS INTEGER) - 1 AS dayOfYear, " +
+            "SUM(amount) AS total " +
+            "FROM bills " +
+            "WHERE timestamp >= :yearStart AND timestamp < :yearEndExclusive " +
+            "GROUP BY dayOfYear")
+    LiveData<List<YearDayTotal>> getYearDayTotals(long yearStart, long yearEndExclusive);
+
+    /**
+     * Per local day, newest first. SQLite's 'localtime' uses the device time zone.
+     */
+    @Query("SELECT CAST(strftime('%s', timestamp / 1000, 'unixepoch', 'localtime', 'start of day', 'utc') AS INTEGER) * 1000 AS dayStart, " +
+            "SUM(amount) AS total, COUNT(*) AS count " +
+            "FROM bills " +
+            "GROUP BY dayStart " +
+            "ORDER BY dayStart DESC")
+    LiveData<List<DayTotal>> getDayTotals();
+
     @Query("SELECT * FROM bills WHERE id = :id LIMIT 1")
     LiveData<Bill> getBillById(long id);
+
+    @Query("SELECT * FROM bills WHERE id = :id LIMIT 1")
+    Bill getBillByIdOnce(long id);
+
+    /**
+     * Served by index_bills_source_timestamp.
+     */
+    @Query("SELECT COUNT(*) FROM bills " +
+            "WHERE source = 'AUTO' AND timestamp >= :from AND timestamp < :to " +
+            "AND ABS(amount - :amount) < 0.005 AND paymentApp IS :paymentApp AND note IS :note")
+    int countAutoBillsLike(double amount, String paymentApp, String note, long from, long to);
+
+    /**
+     * Categories most often used for bills from this payment app, most frequent first.
+     */
+    @Query("SELECT category FROM bills WHERE paymentApp IS :paymentApp " +
+            "GROUP BY category ORDER BY COUNT(*) DESC, MAX(timestamp) DESC LIMIT :limit")
+    List<String> getTopCategoriesForApp(String paymentApp, int limit);
+
+    @Query("SELECT category FROM bills GROUP BY category ORDER BY COUNT(*) DESC, MAX(timestamp) DESC LIMIT :limit")
+    List<String> getTopCategories(int limit);
+
+    @Query("SELECT * FROM bills WHERE needsReview = 1 ORDER BY timestamp DESC")
+    LiveData<List<Bill>> getBillsNeedingReview();
+
+    @Query("SELECT COUNT(*) FROM bills WHERE needsReview = 1")
+    LiveData<Integer> countBillsNeedingReview();
+
+    @Query("UPDATE bills SET needsReview = 0 WHERE id IN (:ids)")
+    void markReviewed(List<Long> ids);
+
+    @Query("UPDATE bills SET needsReview = 0 WHERE needsReview = 1")
+    void markAllReviewed();
+
+    /**
+     * Rewrites one row unchanged so this process's observers of bills re-query.
+     */
+    @Query("UPDATE bills SET id = id WHERE id = (SELECT MAX(id) FROM bills)")
+    void touch();
 }
@@ -1,11 +1,13 @@
 package com.nuist.setu.killbill.data;
 
 import android.content.Context;
+import android.database.Cursor;
 import android.os.Handler;
 import android.os.Looper;
 
 import androidx.lifecycle.LiveData;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -23,13 +25,24 @@ public class BillRepository {
 
     private static volatile BillRepository INSTANCE;
 
+    private final AppDatabase db;
     private final BillDao billDao;
+    private final CategoryStatsDao statsDao;
+    private final SpendingAnomalyEngine anomalyEngine;
+    private final BatchedBillWriter batchedWriter;
     private final ExecutorService ioExecutor;
     private final Handler mainHandler;
 
+    // ioExecutor only; SQLite's data_version as last seen on the write connection
+    private long lastDataVersion = -1;
+
     private BillRepository(Context context) {
-        this.billDao = AppDatabase.getInstance(context).billDao();
+        this.db = AppDatabase.getInstance(context);
+        this.billDao = db.billDao();
+        this.statsDao = db.categoryStatsDao();
+        this.anomalyEngine = new SpendingAnomalyEngine(statsDao);
         this.ioExecutor = Executors.newSingleThreadExecutor();
+        this.batchedWriter = new BatchedBillWriter(db, anomalyEngine, ioExecutor);
         this.mainHandler = new Handler(Looper.getMainLooper());
     }
 
@@ -52,24 +65,149 @@ public class BillRepository {
         return billDao.getBillsBetween(start, endExclusive);
     }
 
+    /**
+     * Re-read (off the main thread) whenever the bills table changes.
+     */
+    public LiveData<DaySnapshot> getDaySnapshot(long start, long endExclusive) {
+        return new TableLiveData<>(db, new String[]{"bills"},
+                () -> billDao.getDaySnapshot(start, endExclusive));
+    }
+
     public LiveData<List<CategoryTotal>> getCategoryTotalsBetween(long start, long endExclusive) {
         return billDao.getCategoryTotalsBetween(start, endExclusive);
     }
 
+    public LiveData<List<CategoryTotal>> getTopCategoryTotalsBetween(long start, long endExclusive,
+                                                                     int top, String otherLabel) {
+        return billDao.getTopCategoryTotalsBetween(start, endExclusive, top, otherLabel);
+    }
+
+    public LiveData<List<YearDayTotal>> getYearDayTotals(long yearStart, long yearEndExclusive) {
+        return billDao.getYearDayTotals(yearStart, yearEndExclusive);
+    }
+
+    public LiveData<List<DayTotal>> getDayTotals() {
+        return billDao.getDayTotals();
+    }
+
     public LiveData<Bill> getBillById(long id) {
         return billDao.getBillById(id);
     }
 
+    /**
+     * Anomalies (today / this week) for buckets that contain the given time.
+     */
+    public LiveData<List<CategoryStats>> getAnomaliesAt(long at) {
+        return statsDao.getAnomaliesAt(at);
+    }
+
+    public LiveData<List<Bill>> getBillsNeedingReview() {
+        return billDao.getBillsNeedingReview();
+    }
+
+    public LiveData<Integer> countBillsNeedingReview() {
+        return billDao.countBillsNeedingReview();
+    }
+
     public void insert(Bill bill) {
-        ioExecutor.execute(() -> billDao.insert(bill));
+        insert(bill, null);
+    }
+
+    /**
+     * @param onInserted run on the background thread once the bill is stored; may be null
+     */
+    public void insert(Bill bill, Runnable onInserted) {
+        ioExecutor.execute(() -> {
+            db.runInTransaction(() -> {
+                bill.id = billDao.insert(bill);
+                anomalyEngine.onBillAdded(bill);
+            });
+            if (onInserted != null) onInserted.run();
+        });
     }
 
     public void update(Bill bill) {
-        ioExecutor.execute(() -> billDao.update(bill));
+        ioExecutor.execute(() -> db.runInTransaction(() -> {
+            Bill old = billDao.getBillByIdOnce(bill.id);
+            billDao.update(bill);
+            if (old != null) anomalyEngine.onBillRemoved(old);
+            anomalyEngine.onBillAdded(bill);
+        }));
     }
 
     public void delete(Bill bill) {
-        ioExecutor.execute(() -> billDao.delete(bill));
+        ioExecutor.execute(() -> db.runInTransaction(() -> {
+            billDao.delete(bill);
+            anomalyEngine.onBillRemoved(bill);
+        }));
+    }
+
+    /**
+     * Background capture path: bills arriving close together are committed in one transaction.
+     *
+     * @param onCommitted run on the background thread once the batch holding the bill is
+     *                    committed (or the bill was dropped as a duplicate); may be null
+     */
+    public void insertBatched(Bill bill, Runnable onCommitted) {
+        batchedWriter.enqueue(bill, onCommitted);
+    }
+
+    /**
+     * Makes this process's LiveData re-query if another process (the notification
+     * listener) committed to the database since the last call. SQLite's data_version only
+     * changes for commits made through other connections, so our own writes cost nothing.
+     */
+    public void syncExternalWrites() {
+        ioExecutor.execute(() -> db.runInTransaction(() -> {
+            long version;
+            try (Cursor c = db.getOpenHelper().getWritableDatabase().query("PRAGMA data_version")) {
+                if (!c.moveToFirst()) return;
+                version = c.getLong(0);
+            }
+            // The first read is the baseline: queries made so far already saw everything
+            boolean changed = lastDataVersion != -1 && version != lastDataVersion;
+            lastDataVersion = version;
+            if (changed) {
+                billDao.touch();
+                statsDao.touch();
+            }
+        }));
+    }
+
+    /**
+     * Blocking; call from a background thread. True if an AUTO bill with the same amount,
+     * app and note was stored around the given time.
+     */
+    public boolean hasAutoBillLike(double amount, String paymentApp, String note, long timestamp) {
+        return billDao.countAutoBillsLike(
+                amount,
+                paymentApp,
+                note,
+                timestamp - BatchedBillWriter.DUPLICATE_WINDOW_MS,
+                timestamp + BatchedBillWriter.DUPLICATE_WINDOW_MS) > 0;
+    }
+
+    /**
+     * Blocking; call from a background thread. Up to {@code limit} categories, those used
+     * most with this payment app first, then the most used overall.
+     */
+    public List<String> predictCategories(String paymentApp, int limit) {
+        List<String> result = new ArrayList<>(billDao.getTopCategoriesForApp(paymentApp, limit));
+        if (result.size() < limit) {
+            for (String category : billDao.getTopCategories(limit)) {
+                if (result.size() >= limit) break;
+                if (!result.contains(category)) result.add(category);
+            }
+        }
+        return result;
+    }
+
+    public void markReviewed(List<Long> ids) {
+        ioExecutor.execute(() -> billDao.markReviewed(ids));
+    }
+
+    public void markAllReviewed() {
+        ioExecutor.execute(billDao::markAllReviewed);
     }
 
     /**
@@ -0,0 +1,53 @@
+package com.nuist.setu.killbill.data;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+
+/**
+ * Rolling spending statistics for one category over one bucket period.
+ *
+ * count/mean/m2 are Welford accumulators over closed bucket totals
+ * (only buckets in which the category was actually used).
+ * bucketStart/bucketEnd/bucketTotal describe the currently open bucket.
+ */
+@Entity(tableName = "category_stats", primaryKeys = {"category", "period"})
+public class CategoryStats {
+
+    public static final String PERIOD_DAY = "DAY";
+    public static final String PERIOD_WEEK = "WEEK";
+
+    @NonNull
+    public String category;
+
+    /**
+     * {@link #PERIOD_DAY} or {@link #PERIOD_WEEK}
+     */
+    @NonNull
+    public String period;
+
+    public long count;
+
+    public double mean;
+
+    public double m2;
+
+    public long bucketStart;
+
+    public long bucketEnd;
+
+    public double bucketTotal;
+
+    /**
+     * Whether the open bucket's total is an outlier against the closed buckets.
+     */
+    public boolean anomalous;
+
+    public CategoryStats(@NonNull String category, @NonNull String period) {
+        this.category = category;
+        this.period = period;
+    }
+
+    public double stdDev() {
+        return count > 1 ? Math.sqrt(m2 / (count - 1)) : 0d;
+    }
+}
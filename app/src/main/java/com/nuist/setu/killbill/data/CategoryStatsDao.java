@@ -0,0 +1,30 @@
+package com.nuist.setu.killbill.data;
+
+import androidx.lifecycle.LiveData;
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+
+import java.util.List;
+
+@Dao
+public interface CategoryStatsDao {
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void upsert(CategoryStats stats);
+
+    @Query("SELECT * FROM category_stats WHERE category = :category AND period = :period LIMIT 1")
+    CategoryStats get(String category, String period);
+
+    @Query("SELECT * FROM category_stats " +
+            "WHERE anomalous = 1 AND bucketStart <= :at AND bucketEnd > :at " +
+            "ORDER BY period ASC, bucketTotal DESC")
+    LiveData<List<CategoryStats>> getAnomaliesAt(long at);
+
+    /**
+     * Rewrites one row unchanged so this process's observers of category_stats re-query.
+     */
+    @Query("UPDATE category_stats SET count = count WHERE rowid = (SELECT MAX(rowid) FROM category_stats)")
+    void touch();
+}
@@ -0,0 +1,24 @@
+package com.nuist.setu.killbill.data;
+
+import java.util.List;
+
+/**
+ * One day's bills with their total, count and per-category breakdown, read in a single
+ * transaction so the numbers always match the rows.
+ */
+public class DaySnapshot {
+    public final List<Bill> bills;
+    public final double total;
+    public final int count;
+    /**
+     * Largest first.
+     */
+    public final List<CategoryTotal> categories;
+
+    public DaySnapshot(List<Bill> bills, double total, int count, List<CategoryTotal> categories) {
+        this.bills = bills;
+        this.total = total;
+        this.count = count;
+        this.categories = categories;
+    }
+}
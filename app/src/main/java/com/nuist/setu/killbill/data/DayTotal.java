@@ -0,0 +1,13 @@
+package com.nuist.setu.killbill.data;
+
+/**
+ * Projection for "local day -> sum(amount), count" query.
+ */
+public class DayTotal {
+    /**
+     * Local midnight starting the day, Unix time millis.
+     */
+    public long dayStart;
+    public double total;
+    public int count;
+}
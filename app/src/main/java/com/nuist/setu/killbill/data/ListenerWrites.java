@@ -0,0 +1,60 @@
+package com.nuist.setu.killbill.data;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import androidx.annotation.NonNull;
+import androidx.core.content.ContextCompat;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+
+/**
+ * One-way change signal from the :listener process, which writes bills with its own Room
+ * instance, to the UI process.
+ *
+ * The listener only broadcasts to a receiver registered at runtime, so nothing is started
+ * when no UI is running; a started screen re-checks on start anyway
+ * ({@link BillRepository#syncExternalWrites}), which covers writes made while it was away.
+ */
+public final class ListenerWrites {
+
+    private static final String ACTION_CHANGED = "com.nuist.setu.killbill.action.BILLS_CHANGED";
+
+    private ListenerWrites() {}
+
+    /**
+     * :listener process, after bills were committed.
+     */
+    public static void announce(@NonNull Context context) {
+        context.sendBroadcast(new Intent(ACTION_CHANGED).setPackage(context.getPackageName()));
+    }
+
+    /**
+     * UI process: while {@code owner} is started, re-reads after the listener's writes.
+     */
+    public static void observe(@NonNull Context context, @NonNull LifecycleOwner owner) {
+        Context appContext = context.getApplicationContext();
+        BillRepository repository = BillRepository.getInstance(appContext);
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context ctx, Intent intent) {
+                repository.syncExternalWrites();
+            }
+        };
+        owner.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onStart(@NonNull LifecycleOwner o) {
+                ContextCompat.registerReceiver(appContext, receiver,
+                        new IntentFilter(ACTION_CHANGED), ContextCompat.RECEIVER_NOT_EXPORTED);
+                repository.syncExternalWrites();
+            }
+
+            @Override
+            public void onStop(@NonNull LifecycleOwner o) {
+                appContext.unregisterReceiver(receiver);
+            }
+        });
+    }
+}
@@ -0,0 +1,107 @@
+package com.nuist.setu.killbill.data;
+
+import androidx.annotation.NonNull;
+
+import com.nuist.setu.killbill.util.DateTimeUtils;
+
+/**
+ * Flags categories whose spend today / this week is far above their usual level.
+ *
+ * Every write touches at most two rows of category_stats (one per period),
+ * looked up by primary key, so the cost per bill is O(1) and no bill history is scanned.
+ * When a new bucket opens, the previous bucket's total is folded into the
+ * mean/variance with Welford's update.
+ *
+ * Must be called on a background thread, inside the same transaction as the bill write.
+ */
+public class SpendingAnomalyEngine {
+
+    // Need a few closed buckets before a baseline means anything
+    private static final long MIN_SAMPLES = 4;
+    // Outlier threshold in standard deviations
+    private static final double Z_THRESHOLD = 3.0;
+    // Floors the deviation so perfectly regular spend doesn't flag tiny increases
+    private static final double MIN_RELATIVE_STD = 0.25;
+
+    private final CategoryStatsDao statsDao;
+
+    public SpendingAnomalyEngine(@NonNull CategoryStatsDao statsDao) {
+        this.statsDao = statsDao;
+    }
+
+    /**
+     * @return true if the bill pushed its category into an anomalous state for any period
+     */
+    public boolean onBillAdded(@NonNull Bill bill) {
+        boolean day = add(bill, CategoryStats.PERIOD_DAY);
+        boolean week = add(bill, CategoryStats.PERIOD_WEEK);
+        return day || week;
+    }
+
+    public void onBillRemoved(@NonNull Bill bill) {
+        remove(bill, CategoryStats.PERIOD_DAY);
+        remove(bill, CategoryStats.PERIOD_WEEK);
+    }
+
+    private boolean add(Bill bill, String period) {
+        long start = bucketStart(bill.timestamp, period);
+
+        CategoryStats stats = statsDao.get(bill.category, period);
+        if (stats == null) {
+            stats = new CategoryStats(bill.category, period);
+            openBucket(stats, start, period);
+        } else if (start > stats.bucketStart) {
+            if (stats.bucketTotal > 0) {
+                fold(stats, stats.bucketTotal);
+            }
+            openBucket(stats, start, period);
+        } else if (start < stats.bucketStart) {
+            // Back-dated bill: its bucket is already folded and can't be corrected in O(1)
+            return false;
+        }
+
+        boolean wasAnomalous = stats.anomalous;
+        stats.bucketTotal += bill.amount;
+        stats.anomalous = isAnomalous(stats);
+        statsDao.upsert(stats);
+        return stats.anomalous && !wasAnomalous;
+    }
+
+    private void remove(Bill bill, String period) {
+        CategoryStats stats = statsDao.get(bill.category, period);
+        if (stats == null) return;
+        if (bucketStart(bill.timestamp, period) != stats.bucketStart) return;
+
+        stats.bucketTotal = Math.max(0d, stats.bucketTotal - bill.amount);
+        stats.anomalous = isAnomalous(stats);
+        statsDao.upsert(stats);
+    }
+
+    private static void openBucket(CategoryStats stats, long start, String period) {
+        stats.bucketStart = start;
+        stats.bucketEnd = CategoryStats.PERIOD_DAY.equals(period)
+                ? DateTimeUtils.endExclusiveOfDay(start)
+                : DateTimeUtils.endExclusiveOfWeek(start);
+        stats.bucketTotal = 0d;
+        stats.anomalous = false;
+    }
+
+    private static void fold(CategoryStats stats, double x) {
+        stats.count++;
+        double delta = x - stats.mean;
+        stats.mean += delta / stats.count;
+        stats.m2 += delta * (x - stats.mean);
+    }
+
+    private static boolean isAnomalous(CategoryStats stats) {
+        if (stats.count < MIN_SAMPLES) return false;
+        double std = Math.max(stats.stdDev(), stats.mean * MIN_RELATIVE_STD);
+        return stats.bucketTotal > stats.mean + Z_THRESHOLD * std;
+    }
+
+    private static long bucketStart(long timestamp, String period) {
+        return CategoryStats.PERIOD_DAY.equals(period)
+                ? DateTimeUtils.startOfDay(timestamp)
+                : DateTimeUtils.startOfWeek(timestamp);
+    }
+}
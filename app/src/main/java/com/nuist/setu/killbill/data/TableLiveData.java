@@ -0,0 +1,101 @@
+package com.nuist.setu.killbill.data;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.LiveData;
+import androidx.room.InvalidationTracker;
+import androidx.room.RoomDatabase;
+
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Runs a query on Room's query executor while observed, and again whenever one of the
+ * given tables changes. For results a DAO method can't return as LiveData itself, e.g.
+ * several queries read in one transaction.
+ *
+ * Only the public {@link InvalidationTracker} API is used: the observer is registered while
+ * the LiveData is active and removed when it goes inactive, so a later activation always
+ * re-reads. Registration happens on the executor because it may touch the database.
+ */
+final class TableLiveData<T> extends LiveData<T> {
+
+    private final RoomDatabase db;
+    private final Executor executor;
+    private final Callable<T> query;
+    private final InvalidationTracker.Observer observer;
+
+    private final AtomicBoolean invalid = new AtomicBoolean(true);
+    private final AtomicBoolean computing = new AtomicBoolean(false);
+
+    // Written on the main thread; the executor brings the registration in line with it
+    private volatile boolean active;
+    // Guarded by this
+    private boolean registered;
+
+    private final Runnable refresh = this::refresh;
+    private final Runnable syncObserver = this::syncObserver;
+
+    TableLiveData(RoomDatabase db, String[] tables, Callable<T> query) {
+        this.db = db;
+        this.executor = db.getQueryExecutor();
+        this.query = query;
+        this.observer = new InvalidationTracker.Observer(tables) {
+            @Override
+            public void onInvalidated(@NonNull Set<String> changed) {
+                invalid.set(true);
+                if (active) executor.execute(refresh);
+            }
+        };
+    }
+
+    @Override
+    protected void onActive() {
+        active = true;
+        invalid.set(true);
+        executor.execute(syncObserver);
+        executor.execute(refresh);
+    }
+
+    @Override
+    protected void onInactive() {
+        active = false;
+        executor.execute(syncObserver);
+    }
+
+    private synchronized void syncObserver() {
+        if (active && !registered) {
+            db.getInvalidationTracker().addObserver(observer);
+            registered = true;
+        } else if (!active && registered) {
+            db.getInvalidationTracker().removeObserver(observer);
+            registered = false;
+        }
+    }
+
+    /**
+     * Executor thread. Invalidations arriving while a query runs are folded into one more run.
+     */
+    private void refresh() {
+        boolean computed;
+        do {
+            computed = false;
+            if (!computing.compareAndSet(false, true)) return;
+            try {
+                T value = null;
+                while (invalid.compareAndSet(true, false)) {
+                    computed = true;
+                    try {
+                        value = query.call();
+                    } catch (Exception e) {
+                        throw new RuntimeException("Query failed", e);
+                    }
+                }
+                if (computed) postValue(value);
+            } finally {
+                computing.set(false);
+            }
+        } while (computed && invalid.get());
+    }
+}
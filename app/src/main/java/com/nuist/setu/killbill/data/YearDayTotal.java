@@ -0,0 +1,12 @@
+package com.nuist.setu.killbill.data;
+
+/**
+ * Projection for "local day of year -> sum(amount)" query.
+ */
+public class YearDayTotal {
+    /**
+     * 0 for January 1st.
+     */
+    public int dayOfYear;
+    public double total;
+}
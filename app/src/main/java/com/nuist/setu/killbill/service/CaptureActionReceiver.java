@@ -0,0 +1,91 @@
+package com.nuist.setu.killbill.service;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.text.TextUtils;
+
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.app.RemoteInput;
+
+import com.nuist.setu.killbill.data.Bill;
+import com.nuist.setu.killbill.data.BillRepository;
+import com.nuist.setu.killbill.data.ListenerWrites;
+import com.nuist.setu.killbill.service.parser.AmountScanner;
+import com.nuist.setu.killbill.service.parser.PaymentParser;
+
+/**
+ * Handles the category / correction actions of a capture prompt (see {@link CaptureNotifier}):
+ * records the bill in the background without opening AddEditBillActivity. Also told when a
+ * prompt is swiped away, so the summary stops listing it.
+ *
+ * Runs in the :listener process next to the listener service.
+ */
+public class CaptureActionReceiver extends BroadcastReceiver {
+
+    static final String ACTION_RECORD = "com.nuist.setu.killbill.action.RECORD_CAPTURED";
+    static final String ACTION_DISMISSED = "com.nuist.setu.killbill.action.CAPTURE_DISMISSED";
+
+    static final String EXTRA_AMOUNT = "amount";
+    static final String EXTRA_NOTE = "note";
+    static final String EXTRA_PAYMENT_APP = "payment_app";
+    static final String EXTRA_CATEGORY = "category";
+    static final String EXTRA_TIMESTAMP = "timestamp";
+    static final String EXTRA_NOTIFICATION_ID = "notification_id";
+
+    /**
+     * RemoteInput result: a corrected amount ("12.5", "１,２００") or, if it isn't a plausible
+     * amount, the note.
+     */
+    static final String KEY_CORRECTION = "correction";
+
+    @Override
+    public void onReceive(Context context, Intent intent) {
+        if (ACTION_DISMISSED.equals(intent.getAction())) {
+            CaptureNotifier.onChildRemoved(intent.getIntExtra(EXTRA_NOTIFICATION_ID, 0));
+            return;
+        }
+        if (!ACTION_RECORD.equals(intent.getAction())) return;
+
+        double amount = intent.getDoubleExtra(EXTRA_AMOUNT, Double.NaN);
+        String category = intent.getStringExtra(EXTRA_CATEGORY);
+        if (Double.isNaN(amount) || TextUtils.isEmpty(category)) return;
+
+        String note = intent.getStringExtra(EXTRA_NOTE);
+        Bundle input = RemoteInput.getResultsFromIntent(intent);
+        CharSequence correction = input != null ? input.getCharSequence(KEY_CORRECTION) : null;
+        if (!TextUtils.isEmpty(correction)) {
+            String text = correction.toString().trim();
+            // Same bounds as a parsed notification: NaN, "1e9" or 0 end up as the note
+            long cents = AmountScanner.parseExact(text);
+            if (cents > 0 && cents <= PaymentParser.MAX_CENTS) {
+                amount = cents / 100.0;
+            } else {
+                note = text;
+            }
+        }
+
+        Bill bill = new Bill(
+                amount,
+                category,
+                note,
+                intent.getLongExtra(EXTRA_TIMESTAMP, System.currentTimeMillis()),
+                null,
+                "AUTO",
+                intent.getStringExtra(EXTRA_PAYMENT_APP)
+        );
+
+        // Cancelling also ends the RemoteInput "sending" spinner
+        int id = intent.getIntExtra(EXTRA_NOTIFICATION_ID, 0);
+        NotificationManagerCompat.from(context).cancel(id);
+        CaptureNotifier.onChildRemoved(id);
+
+        PendingResult result = goAsync();
+        Context appContext = context.getApplicationContext();
+        BillRepository.getInstance(context).insert(bill, () -> {
+            ListenerWrites.announce(appContext);
+            result.finish();
+        });
+    }
+}
@@ -0,0 +1,381 @@
+package com.nuist.setu.killbill.service;
+
+import android.Manifest;
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.content.pm.PackageManager;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+
+import androidx.core.app.NotificationCompat;
+import androidx.core.app.NotificationManagerCompat;
+import androidx.core.app.RemoteInput;
+import androidx.core.content.ContextCompat;
+
+import com.nuist.setu.killbill.R;
+import com.nuist.setu.killbill.ui.AddEditBillActivity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Posts the "Tap to record" prompts for detected payments.
+ *
+ * Each detection becomes a silent child notification in one group; tapping it opens
+ * AddEditBillActivity, its actions record the bill straight away under one of the predicted
+ * categories or with a typed correction ({@link CaptureActionReceiver}). Request codes are
+ * derived from the notification ID, so they are stable and never collide.
+ *
+ * A single InboxStyle summary with a fixed ID lists the detections still in the shade and
+ * is the only one that alerts, once per burst. Each child carries its summary line, so
+ * {@link #restore} can rebuild the list from the shade when the listener (re)connects, and
+ * a delete intent, so a dismissed child leaves the summary right away.
+ * Detections arriving within {@link #MIN_UPDATE_INTERVAL_MS} of the last update are
+ * batched into the next one.
+ *
+ * Used from the pipeline thread only.
+ */
+class CaptureNotifier {
+
+    static final String CHANNEL_ID = "killbill_auto_capture";
+
+    private static final String GROUP_KEY = "com.nuist.setu.killbill.AUTO_CAPTURE";
+    private static final String EXTRA_SUMMARY_LINE = "com.nuist.setu.killbill.SUMMARY_LINE";
+    private static final int SUMMARY_ID = 1;
+    private static final int FIRST_CHILD_ID = 1000;
+    private static final long MIN_UPDATE_INTERVAL_MS = 2000;
+    private static final int MAX_SUMMARY_LINES = 6;
+
+    // By name: this runs in the :listener process, which must not load any UI classes
+    // (the EXTRA_* constants are compile-time constants and get inlined)
+    private static final String ADD_EDIT_ACTIVITY = "com.nuist.setu.killbill.ui.AddEditBillActivity";
+
+    // Request codes per child: open, edit, then one per category action
+    private static final int REQUESTS_PER_CHILD = 4;
+    private static final int MAX_CATEGORY_ACTIONS = REQUESTS_PER_CHILD - 2;
+
+    private static final class Detection {
+        final double amount;
+        final String note;
+        final String payApp;
+        final long postTime;
+        final List<String> categories;
+
+        Detection(double amount, String note, String payApp, long postTime, List<String> categories) {
+            this.amount = amount;
+            this.note = note;
+            this.payApp = payApp;
+            this.postTime = postTime;
+            this.categories = categories;
+        }
+    }
+
+    private static final class Child {
+        final String line;
+        final PendingIntent open;
+
+        Child(String line, PendingIntent open) {
+            this.line = line;
+            this.open = open;
+        }
+    }
+
+    // The running listener's notifier, for CaptureActionReceiver; same process
+    private static volatile CaptureNotifier current;
+
+    private final Context context;
+    private final NotificationPipeline pipeline;
+    private final NotificationManagerCompat nm;
+
+    private final List<Detection> pending = new ArrayList<>();
+    // child ID -> summary line and tap intent, oldest first
+    private final LinkedHashMap<Integer, Child> shown = new LinkedHashMap<>();
+    private int nextChildId = -1;
+    private long lastUpdate;
+    private boolean updateScheduled;
+
+    private final Runnable update = this::update;
+
+    CaptureNotifier(Context context, NotificationPipeline pipeline) {
+        this.context = context;
+        this.pipeline = pipeline;
+        this.nm = NotificationManagerCompat.from(context);
+        current = this;
+    }
+
+    /**
+     * Called by CaptureActionReceiver on any thread once a child was dismissed or cancelled.
+     */
+    static void onChildRemoved(int id) {
+        CaptureNotifier notifier = current;
+        if (notifier != null) notifier.pipeline.post(() -> notifier.remove(id));
+    }
+
+    void detach() {
+        if (current == this) current = null;
+    }
+
+    /**
+     * Rebuilds the summary's list from the children still in the shade, e.g. after the
+     * listener process was killed, and continues numbering after them.
+     */
+    void restore() {
+        List<StatusBarNotification> children = activeChildren();
+        Collections.sort(children, (a, b) -> Integer.compare(a.getId(), b.getId()));
+
+        shown.clear();
+        for (StatusBarNotification sbn : children) {
+            Notification n = sbn.getNotification();
+            String line = n.extras.getString(EXTRA_SUMMARY_LINE);
+            if (line != null) shown.put(sbn.getId(), new Child(line, n.contentIntent));
+            nextChildId = Math.max(nextChildId, sbn.getId() + 1);
+        }
+        if (nextChildId < FIRST_CHILD_ID) nextChildId = FIRST_CHILD_ID;
+        postSummary(false);
+    }
+
+    private void remove(int id) {
+        if (shown.remove(id) != null) postSummary(false);
+    }
+
+    /**
+     * @param categories predicted categories, most likely first; the first two become actions
+     */
+    void onPaymentDetected(double amount, String note, String payApp, long postTime,
+                           List<String> categories) {
+        pending.add(new Detection(amount, note, payApp, postTime, categories));
+        if (updateScheduled) return;
+
+        long wait = lastUpdate + MIN_UPDATE_INTERVAL_MS - SystemClock.elapsedRealtime();
+        if (wait <= 0) {
+            update();
+        } else {
+            updateScheduled = true;
+            pipeline.postDelayed(update, wait);
+        }
+    }
+
+    private void update() {
+        updateScheduled = false;
+        lastUpdate = SystemClock.elapsedRealtime();
+        if (pending.isEmpty() || !canPost()) {
+            pending.clear();
+            return;
+        }
+
+        // One IPC: forget children the user already tapped or dismissed
+        retainActive();
+
+        for (Detection d : pending) {
+            int id = nextChildId++;
+            String line = formatLine(d);
+            PendingIntent open = recordIntent(id, d);
+            Bundle extras = new Bundle();
+            extras.putString(EXTRA_SUMMARY_LINE, line);
+            NotificationCompat.Builder builder = new NotificationCompat.Builder(context, CHANNEL_ID)
+                    .setSmallIcon(R.drawable.ic_notify)
+                    .setContentTitle(context.getString(R.string.detected_payment_title))
+                    .setContentText(line + "，" + context.getString(R.string.tap_to_record))
+                    .setStyle(new NotificationCompat.BigTextStyle().bigText(line + "\n" + d.note))
+                    .setAutoCancel(true)
+                    .setContentIntent(open)
+                    .setDeleteIntent(dismissIntent(id))
+                    .addExtras(extras)
+                    .setGroup(GROUP_KEY)
+                    .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                    .setSilent(true);
+            addRecordActions(builder, id, d);
+            notify(id, builder.build());
+            shown.put(id, new Child(line, open));
+        }
+        pending.clear();
+
+        postSummary(true);
+    }
+
+    /**
+     * Posts the summary for what {@link #shown} holds, or removes it if nothing is left.
+     *
+     * @param alert false when only bringing the list up to date, which must not buzz again
+     */
+    private void postSummary(boolean alert) {
+        if (shown.isEmpty()) {
+            nm.cancel(SUMMARY_ID);
+        } else if (canPost()) {
+            notify(SUMMARY_ID, buildSummary(alert));
+        }
+    }
+
+    private Notification buildSummary(boolean alert) {
+        int count = shown.size();
+        NotificationCompat.InboxStyle inbox = new NotificationCompat.InboxStyle();
+        List<Child> children = new ArrayList<>(shown.values());
+        // Newest first, capped
+        for (int i = children.size() - 1; i >= 0 && i >= children.size() - MAX_SUMMARY_LINES; i--) {
+            inbox.addLine(children.get(i).line);
+        }
+        if (count > MAX_SUMMARY_LINES) {
+            inbox.setSummaryText(context.getString(R.string.detected_payments_more, count - MAX_SUMMARY_LINES));
+        }
+
+        Child newest = children.get(children.size() - 1);
+        String title = context.getResources().getQuantityString(R.plurals.detected_payments_count, count, count);
+        return new NotificationCompat.Builder(context, CHANNEL_ID)
+                .setSmallIcon(R.drawable.ic_notify)
+                .setContentTitle(title)
+                .setContentText(newest.line)
+                .setStyle(inbox)
+                .setNumber(count)
+                // Pre-N shows only the summary: tapping it records the newest payment
+                .setContentIntent(newest.open)
+                .setAutoCancel(true)
+                .setGroup(GROUP_KEY)
+                .setGroupSummary(true)
+                .setGroupAlertBehavior(NotificationCompat.GROUP_ALERT_SUMMARY)
+                .setOnlyAlertOnce(true)
+                .setSilent(!alert)
+                .setPriority(NotificationCompat.PRIORITY_HIGH)
+                .build();
+    }
+
+    /**
+     * Drops children no longer in the shade; on first use, continues numbering after them
+     * so a restarted service doesn't overwrite prompts that are still showing.
+     */
+    private void retainActive() {
+        int maxActiveId = FIRST_CHILD_ID - 1;
+        Set<Integer> activeIds = new HashSet<>();
+        for (StatusBarNotification sbn : activeChildren()) {
+            activeIds.add(sbn.getId());
+            maxActiveId = Math.max(maxActiveId, sbn.getId());
+        }
+
+        Iterator<Integer> it = shown.keySet().iterator();
+        while (it.hasNext()) {
+            if (!activeIds.contains(it.next())) it.remove();
+        }
+        if (nextChildId < FIRST_CHILD_ID) {
+            nextChildId = maxActiveId + 1;
+        }
+    }
+
+    /**
+     * Our capture prompts currently in the shade (not the summary); one IPC.
+     */
+    private List<StatusBarNotification> activeChildren() {
+        List<StatusBarNotification> children = new ArrayList<>();
+        NotificationManager manager = context.getSystemService(NotificationManager.class);
+        if (manager == null) return children;
+        for (StatusBarNotification sbn : manager.getActiveNotifications()) {
+            if (sbn.getId() >= FIRST_CHILD_ID
+                    && GROUP_KEY.equals(sbn.getNotification().getGroup())) {
+                children.add(sbn);
+            }
+        }
+        return children;
+    }
+
+    private void addRecordActions(NotificationCompat.Builder builder, int id, Detection d) {
+        int base = id * REQUESTS_PER_CHILD;
+        int actions = Math.min(MAX_CATEGORY_ACTIONS, d.categories.size());
+        for (int i = 0; i < actions; i++) {
+            String category = d.categories.get(i);
+            PendingIntent pi = PendingIntent.getBroadcast(
+                    context,
+                    base + 2 + i,
+                    actionIntent(id, d, category),
+                    PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+            );
+            builder.addAction(R.drawable.ic_notify, category, pi);
+        }
+        if (d.categories.isEmpty()) return;
+
+        // Free text: a corrected amount or a note; recorded under the top category
+        int mutable = Build.VERSION.SDK_INT >= Build.VERSION_CODES.S ? PendingIntent.FLAG_MUTABLE : 0;
+        PendingIntent edit = PendingIntent.getBroadcast(
+                context,
+                base + 1,
+                actionIntent(id, d, d.categories.get(0)),
+                PendingIntent.FLAG_UPDATE_CURRENT | mutable
+        );
+        RemoteInput input = new RemoteInput.Builder(CaptureActionReceiver.KEY_CORRECTION)
+                .setLabel(context.getString(R.string.capture_correction_hint))
+                .build();
+        builder.addAction(new NotificationCompat.Action.Builder(
+                R.drawable.ic_notify, context.getString(R.string.capture_correct), edit)
+                .addRemoteInput(input)
+                .build());
+    }
+
+    private Intent actionIntent(int id, Detection d, String category) {
+        return new Intent(context, CaptureActionReceiver.class)
+                .setAction(CaptureActionReceiver.ACTION_RECORD)
+                .putExtra(CaptureActionReceiver.EXTRA_AMOUNT, d.amount)
+                .putExtra(CaptureActionReceiver.EXTRA_NOTE, d.note)
+                .putExtra(CaptureActionReceiver.EXTRA_PAYMENT_APP, d.payApp)
+                .putExtra(CaptureActionReceiver.EXTRA_CATEGORY, category)
+                .putExtra(CaptureActionReceiver.EXTRA_TIMESTAMP, d.postTime)
+                .putExtra(CaptureActionReceiver.EXTRA_NOTIFICATION_ID, id);
+    }
+
+    /**
+     * Fires when the user swipes the child away (not when it's tapped or cancelled by us).
+     * Shares the open intent's request code; the different action keeps them apart.
+     */
+    private PendingIntent dismissIntent(int id) {
+        Intent intent = new Intent(context, CaptureActionReceiver.class)
+                .setAction(CaptureActionReceiver.ACTION_DISMISSED)
+                .putExtra(CaptureActionReceiver.EXTRA_NOTIFICATION_ID, id);
+        return PendingIntent.getBroadcast(
+                context,
+                id * REQUESTS_PER_CHILD,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private PendingIntent recordIntent(int id, Detection d) {
+        Intent intent = new Intent().setClassName(context, ADD_EDIT_ACTIVITY);
+        intent.putExtra(AddEditBillActivity.EXTRA_PREFILL_AMOUNT, d.amount);
+        intent.putExtra(AddEditBillActivity.EXTRA_PREFILL_NOTE, d.note);
+        intent.putExtra(AddEditBillActivity.EXTRA_SOURCE, "AUTO");
+        intent.putExtra(AddEditBillActivity.EXTRA_PAYMENT_APP, d.payApp);
+        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
+
+        return PendingIntent.getActivity(
+                context,
+                id * REQUESTS_PER_CHILD,
+                intent,
+                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
+        );
+    }
+
+    private static String formatLine(Detection d) {
+        return String.format(Locale.CHINA, "%s ￥%.2f", d.payApp, d.amount);
+    }
+
+    private boolean canPost() {
+        return Build.VERSION.SDK_INT < Build.VERSION_CODES.TIRAMISU
+                || ContextCompat.checkSelfPermission(context, Manifest.permission.POST_NOTIFICATIONS)
+                == PackageManager.PERMISSION_GRANTED;
+    }
+
+    private void notify(int id, Notification notification) {
+        try {
+            nm.notify(id, notification);
+        } catch (SecurityException e) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.nuist.setu.killbill.service;
+
+import android.content.Context;
+
+import com.nuist.setu.killbill.service.parser.CaptureRecord;
+
+import org.json.JSONException;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Opt-in recorder that appends every notification from a watched app to
+ * files/capture_corpus.jsonl in {@link CaptureRecord} format, for offline replay with
+ * the ReplayRunner harness in app/src/test.
+ *
+ * Pull it with: adb shell run-as com.nuist.setu.killbill cat files/capture_corpus.jsonl
+ * Recording stops once the file reaches {@link #MAX_BYTES}. Used from the pipeline thread only.
+ */
+class CaptureRecorder {
+
+    static final String FILE_NAME = "capture_corpus.jsonl";
+    private static final long MAX_BYTES = 2 * 1024 * 1024;
+
+    private final File file;
+
+    CaptureRecorder(Context context) {
+        file = new File(context.getFilesDir(), FILE_NAME);
+    }
+
+    void record(CapturedNotification n) {
+        if (file.length() >= MAX_BYTES) return;
+
+        CaptureRecord record = new CaptureRecord(
+                n.packageName,
+                toString(n.title),
+                toString(n.text),
+                toString(n.bigText),
+                n.postTime,
+                CaptureRecord.UNLABELLED);
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            out.write((record.toJson() + "\n").getBytes(StandardCharsets.UTF_8));
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private static String toString(CharSequence s) {
+        return s == null ? null : s.toString();
+    }
+}
@@ -0,0 +1,35 @@
+package com.nuist.setu.killbill.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+/**
+ * Post time up to which every watched notification has been processed (see
+ * {@link NotificationPipeline#watermarkLimit}), persisted so a reconnecting listener only
+ * catches up on notifications it hasn't seen.
+ *
+ * Not thread-safe; used from the pipeline thread only.
+ */
+class CaptureWatermark {
+
+    private static final String PREFS = "capture_state";
+    private static final String KEY_WATERMARK = "post_time_watermark";
+
+    private final SharedPreferences prefs;
+    private long value;
+
+    CaptureWatermark(Context context) {
+        prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        value = prefs.getLong(KEY_WATERMARK, 0);
+    }
+
+    long get() {
+        return value;
+    }
+
+    void advance(long postTime) {
+        if (postTime <= value) return;
+        value = postTime;
+        prefs.edit().putLong(KEY_WATERMARK, postTime).apply();
+    }
+}
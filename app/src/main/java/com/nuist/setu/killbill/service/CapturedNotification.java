@@ -0,0 +1,63 @@
+package com.nuist.setu.killbill.service;
+
+import android.app.Notification;
+import android.os.Bundle;
+import android.os.SystemClock;
+import android.service.notification.StatusBarNotification;
+
+import com.nuist.setu.killbill.service.parser.PaymentRule;
+
+/**
+ * Snapshot of the parts of a watched notification the pipeline needs,
+ * taken on the listener thread so the StatusBarNotification isn't retained.
+ */
+final class CapturedNotification {
+
+    final String key;
+    final String packageName;
+    final long postTime;
+    final PaymentRule rule;
+
+    final CharSequence title;
+    final CharSequence text;
+    final CharSequence bigText;
+
+    /**
+     * SystemClock.elapsedRealtimeNanos() when queued; for queue-wait latency.
+     */
+    final long enqueuedAtNanos;
+
+    CapturedNotification(String key, String packageName, long postTime, PaymentRule rule,
+                         CharSequence title, CharSequence text, CharSequence bigText,
+                         long enqueuedAtNanos) {
+        this.key = key;
+        this.packageName = packageName;
+        this.postTime = postTime;
+        this.rule = rule;
+        this.title = title;
+        this.text = text;
+        this.bigText = bigText;
+        this.enqueuedAtNanos = enqueuedAtNanos;
+    }
+
+    /**
+     * @return the snapshot, or null if the notification carries no extras
+     */
+    static CapturedNotification from(StatusBarNotification sbn, PaymentRule rule) {
+        Notification n = sbn.getNotification();
+        if (n == null) return null;
+
+        Bundle extras = n.extras;
+        if (extras == null) return null;
+
+        return new CapturedNotification(
+                sbn.getKey(),
+                sbn.getPackageName(),
+                sbn.getPostTime(),
+                rule,
+                extras.getCharSequence(Notification.EXTRA_TITLE),
+                extras.getCharSequence(Notification.EXTRA_TEXT),
+                extras.getCharSequence(Notification.EXTRA_BIG_TEXT),
+                SystemClock.elapsedRealtimeNanos());
+    }
+}
@@ -0,0 +1,148 @@
+package com.nuist.setu.killbill.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.text.TextUtils;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bounded, time-windowed memory of recently captured payments.
+ *
+ * A capture is a duplicate if
+ * - the same post (sbn key and post time) already produced its fingerprint within
+ *   {@link #KEY_WINDOW_MS} (the live listener and a catch-up both see it, or the app refreshes
+ *   it without re-posting). WeChat and Alipay reuse one key per conversation or merchant, so
+ *   a new post time under the same key is a new payment and only the fingerprint window
+ *   applies, or
+ * - another notification produced the same fingerprint within {@link #FINGERPRINT_WINDOW_MS}
+ *   (the same payment posted twice). This window is kept short: two real payments of the
+ *   same amount in the same app (two coffees) are minutes apart and must both count.
+ *
+ * Entries are persisted to SharedPreferences so a service restart doesn't re-prompt.
+ * Not thread-safe; used from a single thread.
+ */
+public class DedupCache {
+
+    static final long FINGERPRINT_WINDOW_MS = 8 * 1000L;
+    static final long KEY_WINDOW_MS = 30 * 60 * 1000L;
+    private static final int MAX_ENTRIES = 64;
+
+    private static final String PREFS = "capture_dedup";
+    private static final String KEY_ENTRIES = "entries";
+
+    private final SharedPreferences prefs;
+
+    // fingerprint -> last seen
+    private final LinkedHashMap<String, Long> fingerprints = boundedMap();
+    // sbnKey + '\u0001' + postTime + '\u0001' + fingerprint -> last seen
+    private final LinkedHashMap<String, Long> keyedFingerprints = boundedMap();
+
+    public DedupCache(Context context) {
+        prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        restore();
+    }
+
+    /**
+     * Normalised fingerprint: package, amount in cents, and the merchant or, when none was
+     * recognised, the notification text; both without case/whitespace/punctuation.
+     */
+    public static String fingerprint(String pkg, long cents, String merchant, String note) {
+        StringBuilder sb = new StringBuilder(96);
+        sb.append(pkg).append('|').append(cents).append('|');
+        if (!TextUtils.isEmpty(merchant)) {
+            appendNormalized(sb, merchant);
+        } else if (!TextUtils.isEmpty(note)) {
+            sb.append('~');
+            appendNormalized(sb, note);
+        }
+        return sb.toString();
+    }
+
+    private static void appendNormalized(StringBuilder sb, String s) {
+        String lower = s.toLowerCase(Locale.ROOT);
+        for (int i = 0; i < lower.length(); i++) {
+            char c = lower.charAt(i);
+            if (Character.isLetterOrDigit(c)) sb.append(c);
+        }
+    }
+
+    /**
+     * Records the capture and reports whether it had already been seen.
+     */
+    public boolean checkAndRecord(String sbnKey, long postTime, String fingerprint, long now) {
+        // Without a post time there is nothing to tell two posts under one key apart
+        String keyed = postTime > 0 ? sbnKey + '\u0001' + postTime + '\u0001' + fingerprint : null;
+
+        boolean duplicate = isRecent(fingerprints.get(fingerprint), now, FINGERPRINT_WINDOW_MS)
+                || (keyed != null && isRecent(keyedFingerprints.get(keyed), now, KEY_WINDOW_MS));
+
+        // Re-insert so the access moves to the tail (eviction order = age)
+        fingerprints.remove(fingerprint);
+        fingerprints.put(fingerprint, now);
+        if (keyed != null) {
+            keyedFingerprints.remove(keyed);
+            keyedFingerprints.put(keyed, now);
+        }
+        persist(now);
+
+        return duplicate;
+    }
+
+    private static boolean isRecent(Long seenAt, long now, long window) {
+        return seenAt != null && now - seenAt < window;
+    }
+
+    private void persist(long now) {
+        StringBuilder sb = new StringBuilder();
+        appendEntries(sb, 'F', fingerprints, now, FINGERPRINT_WINDOW_MS);
+        appendEntries(sb, 'K', keyedFingerprints, now, KEY_WINDOW_MS);
+        prefs.edit().putString(KEY_ENTRIES, sb.toString()).apply();
+    }
+
+    private static void appendEntries(StringBuilder sb, char type, Map<String, Long> map,
+                                      long now, long window) {
+        Iterator<Map.Entry<String, Long>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            if (!isRecent(e.getValue(), now, window)) {
+                it.remove();
+                continue;
+            }
+            sb.append(type).append('\t').append(e.getValue()).append('\t').append(e.getKey()).append('\n');
+        }
+    }
+
+    private void restore() {
+        String stored = prefs.getString(KEY_ENTRIES, null);
+        if (TextUtils.isEmpty(stored)) return;
+
+        for (String line : stored.split("\n")) {
+            String[] parts = line.split("\t", 3);
+            if (parts.length != 3) continue;
+            long time;
+            try {
+                time = Long.parseLong(parts[1]);
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if ("F".equals(parts[0])) {
+                fingerprints.put(parts[2], time);
+            } else if ("K".equals(parts[0])) {
+                keyedFingerprints.put(parts[2], time);
+            }
+        }
+    }
+
+    private static LinkedHashMap<String, Long> boundedMap() {
+        return new LinkedHashMap<String, Long>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > MAX_ENTRIES;
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package com.nuist.setu.killbill.service;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.os.SystemClock;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Moves notification processing off the listener's main looper.
+ *
+ * Pending work is a bounded queue keyed by notification key:
+ * - a newer post of a notification that is still queued replaces it (coalesce);
+ * - when the queue is full the oldest entry is dropped (apps like WeChat can post
+ *   bursts of chat notifications that share the watched package).
+ *
+ * Neither a queued nor a dropped entry has been processed, so {@link #watermarkLimit} keeps
+ * the capture watermark below both; a dropped one is then caught up on from the shade the
+ * next time the listener connects.
+ */
+class NotificationPipeline {
+
+    interface Processor {
+        /**
+         * Runs on the pipeline thread.
+         */
+        void process(CapturedNotification n);
+    }
+
+    static final int CAPACITY = 32;
+
+    private final HandlerThread thread;
+    private final Handler handler;
+    private final Processor processor;
+    private final PipelineStats stats = PipelineStats.INSTANCE;
+
+    // Guarded by itself; insertion order = age
+    private final LinkedHashMap<String, CapturedNotification> queue = new LinkedHashMap<>();
+    // Guarded by queue; oldest post time dropped since the last catch-up
+    private long oldestDropped = Long.MAX_VALUE;
+
+    private final Runnable drain = this::drainOne;
+
+    NotificationPipeline(Processor processor) {
+        this.processor = processor;
+        this.thread = new HandlerThread("killbill-capture", Process.THREAD_PRIORITY_BACKGROUND);
+        this.thread.start();
+        this.handler = new Handler(thread.getLooper());
+    }
+
+    /**
+     * Called on the listener thread; never blocks.
+     */
+    void enqueue(CapturedNotification n) {
+        synchronized (queue) {
+            if (queue.remove(n.key) != null) {
+                stats.coalesced.incrementAndGet();
+            } else if (queue.size() >= CAPACITY) {
+                Iterator<CapturedNotification> oldest = queue.values().iterator();
+                oldestDropped = Math.min(oldestDropped, oldest.next().postTime);
+                oldest.remove();
+                stats.dropped.incrementAndGet();
+            }
+            queue.put(n.key, n);
+        }
+        handler.post(drain);
+    }
+
+    /**
+     * How far the watermark may move after processing a notification posted at
+     * {@code postTime}: not past anything still queued or dropped.
+     */
+    long watermarkLimit(long postTime) {
+        synchronized (queue) {
+            long limit = Math.min(postTime, oldestDropped - 1);
+            for (CapturedNotification n : queue.values()) {
+                limit = Math.min(limit, n.postTime - 1);
+            }
+            return limit;
+        }
+    }
+
+    /**
+     * Called right before a catch-up scans the shade, which covers everything dropped so far.
+     */
+    void forgetDropped() {
+        synchronized (queue) {
+            oldestDropped = Long.MAX_VALUE;
+        }
+    }
+
+    /**
+     * Runs arbitrary work on the pipeline thread, after already queued notifications.
+     */
+    void post(Runnable r) {
+        handler.post(r);
+    }
+
+    void postDelayed(Runnable r, long delayMillis) {
+        handler.postDelayed(r, delayMillis);
+    }
+
+    private void drainOne() {
+        CapturedNotification next;
+        synchronized (queue) {
+            Iterator<CapturedNotification> it = queue.values().iterator();
+            if (!it.hasNext()) return; // coalesced/dropped entries leave extra drain posts
+            next = it.next();
+            it.remove();
+        }
+        stats.record(PipelineStats.STAGE_QUEUE_WAIT, SystemClock.elapsedRealtimeNanos() - next.enqueuedAtNanos);
+        try {
+            processor.process(next);
+        } catch (RuntimeException e) {
+            // One malformed notification must not kill the pipeline thread
+            e.printStackTrace();
+        }
+    }
+
+    void quit() {
+        thread.quitSafely();
+    }
+}
@@ -1,143 +1,300 @@
 package com.nuist.setu.killbill.service;
 
-import android.Manifest;
-import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
-import android.content.Intent;
-import android.content.pm.PackageManager;
 import android.os.Build;
-import android.os.Bundle;
+import android.os.SystemClock;
 import android.service.notification.NotificationListenerService;
 import android.service.notification.StatusBarNotification;
 import android.text.TextUtils;
 
-import androidx.core.app.ActivityCompat;
-import androidx.core.app.NotificationCompat;
-import androidx.core.app.NotificationManagerCompat;
-
 import com.nuist.setu.killbill.R;
-import com.nuist.setu.killbill.ui.AddEditBillActivity;
-
-import java.util.Locale;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import com.nuist.setu.killbill.data.Bill;
+import com.nuist.setu.killbill.data.BillRepository;
+import com.nuist.setu.killbill.data.ListenerWrites;
+import com.nuist.setu.killbill.service.parser.ParsedPayment;
+import com.nuist.setu.killbill.service.parser.PaymentParser;
+import com.nuist.setu.killbill.service.parser.PaymentRule;
+import com.nuist.setu.killbill.service.parser.PaymentRuleLoader;
+import com.nuist.setu.killbill.service.parser.PaymentRuleSet;
+import com.nuist.setu.killbill.util.CapturePreferences;
+
+import org.json.JSONException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
- * Listens for payment notifications (e.g., Alipay / WeChat).
+ * Listens for payment notifications (e.g., Alipay / WeChat / UnionPay / bank apps).
+ * Which apps are watched and how they are parsed comes from assets/payment_rules.json,
+ * optionally overridden by files/payment_rules.json.
  *
  * Instead of directly starting an Activity in background (restricted on modern Android),
- * we post our own "Tap to record" notification with a PendingIntent.
+ * we post our own "Tap to record" notification with a PendingIntent (see {@link CaptureNotifier}),
+ * or, in the opt-in direct mode, write the bill straight to the database for later review.
+ *
+ * The listener callback only filters by package and snapshots the text; parsing,
+ * de-duplication and dispatch run on {@link NotificationPipeline}'s thread.
  */
 public class PaymentNotificationListenerService extends NotificationListenerService {
 
-    private static final String CHANNEL_ID = "killbill_auto_capture";
+    // Built-in rules (assets) and optional user overrides (files dir), same format
+    private static final String RULES_ASSET = "payment_rules.json";
+    private static final String RULES_OVERRIDE_FILE = "payment_rules.json";
 
-    // Popular package names
-    private static final String PKG_ALIPAY = "com.eg.android.AlipayGphone";
-    private static final String PKG_WECHAT = "com.tencent.mm";
+    // Offered as one-tap actions on the capture prompt
+    private static final int PREDICTED_CATEGORIES = 2;
 
-    private static String lastKey = null;
-    private static long lastTimeMs = 0L;
+    // Don't prompt for payments that have been sitting in the shade for ages
+    private static final long MAX_CATCH_UP_AGE_MS = 6 * 60 * 60 * 1000L;
+
+    private final PaymentParser parser = new PaymentParser();
+    private final PipelineStats stats = PipelineStats.INSTANCE;
+    private PaymentRuleSet rules = PaymentRuleSet.EMPTY;
+    private String defaultCategory;
+    private NotificationPipeline pipeline;
+
+    // Only touched on the pipeline thread
+    private DedupCache dedupCache;
+    private CaptureRecorder recorder;
+    private CaptureNotifier notifier;
+    private CaptureWatermark watermark;
 
     @Override
     public void onCreate() {
         super.onCreate();
         createChannelIfNeeded();
+        rules = loadRules();
+
+        // Auto-recorded bills go to the last ("other") category until reviewed
+        String[] categories = getResources().getStringArray(R.array.bill_categories);
+        defaultCategory = categories[categories.length - 1];
+
+        pipeline = new NotificationPipeline(this::process);
+        // Reads SharedPreferences from disk; runs before any queued notification
+        pipeline.post(() -> {
+            dedupCache = new DedupCache(this);
+            recorder = new CaptureRecorder(this);
+            notifier = new CaptureNotifier(this, pipeline);
+            watermark = new CaptureWatermark(this);
+        });
     }
 
+    /**
+     * Also called after a rebind or a killed listener process: anything posted while we were
+     * disconnected is still in the shade, so catch up from there. Our own prompts are too,
+     * so the summary's list is rebuilt from them first.
+     */
+    @Override
+    public void onListenerConnected() {
+        super.onListenerConnected();
+        pipeline.post(() -> notifier.restore());
+        pipeline.post(this::catchUp);
+    }
+
+    @Override
+    public void onDestroy() {
+        pipeline.post(() -> notifier.detach());
+        pipeline.quit();
+        super.onDestroy();
+    }
+
+    /**
+     * Runs on the listener's main looper: filter by package, snapshot the text, hand off.
+     */
     @Override
     public void onNotificationPosted(StatusBarNotification sbn) {
         if (sbn == null) return;
+        long startNanos = SystemClock.elapsedRealtimeNanos();
+        stats.received.incrementAndGet();
+
+        // Earliest possible drop: one hash probe for non-payment apps
+        PaymentRule rule = rules.forPackage(sbn.getPackageName());
+        if (rule == null) {
+            stats.ignoredPackage.incrementAndGet();
+            return;
+        }
+
+        CapturedNotification cn = CapturedNotification.from(sbn, rule);
+        if (cn == null) return;
+        pipeline.enqueue(cn);
+
+        stats.record(PipelineStats.STAGE_LISTENER, SystemClock.elapsedRealtimeNanos() - startNanos);
+    }
 
-        String pkg = sbn.getPackageName();
-        if (!PKG_ALIPAY.equals(pkg) && !PKG_WECHAT.equals(pkg)) {
+    /**
+     * Runs on the pipeline thread. Only notifications newer than the watermark (and not older
+     * than {@link #MAX_CATCH_UP_AGE_MS}) are snapshotted; everything else costs a long
+     * comparison and at most a hash probe.
+     *
+     * The backlog is processed right here, oldest first, rather than through the pipeline's
+     * queue, which would drop its oldest entries past {@link NotificationPipeline#CAPACITY}.
+     * In post time order the watermark only ever covers notifications that were actually
+     * processed, so if the process dies halfway the rest is caught up on next time.
+     */
+    private void catchUp() {
+        StatusBarNotification[] active;
+        // The scan below sees whatever the live queue dropped before it
+        pipeline.forgetDropped();
+        try {
+            active = getActiveNotifications();
+        } catch (RuntimeException e) {
+            // SecurityException if the listener got disconnected again meanwhile
+            e.printStackTrace();
             return;
         }
+        if (active == null) return;
 
-        Notification n = sbn.getNotification();
-        if (n == null) return;
+        long since = Math.max(watermark.get(), System.currentTimeMillis() - MAX_CATCH_UP_AGE_MS);
+        List<CapturedNotification> missed = new ArrayList<>();
+        for (StatusBarNotification sbn : active) {
+            if (sbn.getPostTime() <= since) continue;
 
-        Bundle extras = n.extras;
-        if (extras == null) return;
+            PaymentRule rule = rules.forPackage(sbn.getPackageName());
+            if (rule == null) continue;
 
-        String title = safeToString(extras.getCharSequence(Notification.EXTRA_TITLE));
-        String text = safeToString(extras.getCharSequence(Notification.EXTRA_TEXT));
-        String bigText = safeToString(extras.getCharSequence(Notification.EXTRA_BIG_TEXT));
+            CapturedNotification cn = CapturedNotification.from(sbn, rule);
+            if (cn == null) continue;
+            missed.add(cn);
+        }
+        Collections.sort(missed, (a, b) -> Long.compare(a.postTime, b.postTime));
+
+        for (CapturedNotification cn : missed) {
+            stats.caughtUp.incrementAndGet();
+            try {
+                process(cn);
+            } catch (RuntimeException e) {
+                // Same as the pipeline: one malformed notification must not stop the rest
+                e.printStackTrace();
+            }
+        }
+    }
 
-        String content = (title + " " + text + " " + bigText).trim();
-        if (TextUtils.isEmpty(content)) return;
+    /**
+     * Runs on the pipeline thread.
+     */
+    private void process(CapturedNotification cn) {
+        watermark.advance(pipeline.watermarkLimit(cn.postTime));
 
-        ParseResult result = parsePayment(content);
-        if (result == null) return;
+        if (CapturePreferences.isCorpusRecordingEnabled(this)) {
+            recorder.record(cn);
+        }
+
+        long t0 = SystemClock.elapsedRealtimeNanos();
+        ParsedPayment result = parser.parse(cn.rule, cn.title, cn.text, cn.bigText);
+        long t1 = SystemClock.elapsedRealtimeNanos();
+        stats.record(PipelineStats.STAGE_PARSE, t1 - t0);
+
+        // The ledger only tracks spending
+        if (result == null || result.income) return;
+        stats.payments.incrementAndGet();
 
-        String payApp = PKG_ALIPAY.equals(pkg) ? "支付宝" : "微信";
+        String payApp = result.paymentApp;
         String note = result.note;
         if (TextUtils.isEmpty(note)) {
             note = payApp + "自动识别";
         }
 
-        // de-duplicate within a short window
-        String key = pkg + "|" + result.amount + "|" + note;
-        long now = System.currentTimeMillis();
-        if (key.equals(lastKey) && (now - lastTimeMs) < 8000) {
+        // de-duplicate re-posts, updates and interleaved apps, then against stored AUTO bills
+        String fingerprint = DedupCache.fingerprint(cn.packageName, result.cents, result.merchant, note);
+        long postTime = cn.postTime > 0 ? cn.postTime : System.currentTimeMillis();
+        boolean duplicate = dedupCache.checkAndRecord(cn.key, cn.postTime, fingerprint, System.currentTimeMillis())
+                || BillRepository.getInstance(this).hasAutoBillLike(result.amount, payApp, note, postTime);
+        long t2 = SystemClock.elapsedRealtimeNanos();
+        stats.record(PipelineStats.STAGE_DEDUP, t2 - t1);
+        if (duplicate) {
+            stats.duplicates.incrementAndGet();
             return;
         }
-        lastKey = key;
-        lastTimeMs = now;
 
-        postAutoCaptureNotification(result.amount, note, payApp);
+        // Direct mode writes into the ledger unseen, so only for a payment phrase in the body;
+        // anything weaker is still offered as a prompt
+        if (result.confident && CapturePreferences.isDirectRecordEnabled(this)) {
+            recordDirectly(result.amount, note, payApp, postTime);
+        } else {
+            List<String> categories = BillRepository.getInstance(this)
+                    .predictCategories(payApp, PREDICTED_CATEGORIES);
+            if (categories.isEmpty()) categories = Collections.singletonList(defaultCategory);
+            notifier.onPaymentDetected(result.amount, note, payApp, postTime, categories);
+        }
+        stats.record(PipelineStats.STAGE_DISPATCH, SystemClock.elapsedRealtimeNanos() - t2);
     }
 
-    private void postAutoCaptureNotification(double amount, String note, String payApp) {
-        Intent intent = new Intent(this, AddEditBillActivity.class);
-        intent.putExtra(AddEditBillActivity.EXTRA_PREFILL_AMOUNT, amount);
-        intent.putExtra(AddEditBillActivity.EXTRA_PREFILL_NOTE, note);
-        intent.putExtra(AddEditBillActivity.EXTRA_SOURCE, "AUTO");
-        intent.putExtra(AddEditBillActivity.EXTRA_PAYMENT_APP, payApp);
-        intent.addFlags(Intent.FLAG_ACTIVITY_NEW_TASK);
-
-        int requestCode = (int) (System.currentTimeMillis() & 0xfffffff);
-        PendingIntent pi = PendingIntent.getActivity(
-                this,
-                requestCode,
-                intent,
-                PendingIntent.FLAG_UPDATE_CURRENT | PendingIntent.FLAG_IMMUTABLE
-        );
-
-        String title = getString(R.string.detected_payment_title);
-        String contentText = String.format(Locale.CHINA, "%s %s，%s",
-                payApp,
-                String.format(Locale.CHINA, "￥%.2f", amount),
-                getString(R.string.tap_to_record));
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter pw, String[] args) {
+        pw.println("rules=" + rules.size());
+        stats.dump(pw);
+    }
 
-        NotificationCompat.Builder builder = new NotificationCompat.Builder(this, CHANNEL_ID)
-                .setSmallIcon(R.drawable.ic_notify)
-                .setContentTitle(title)
-                .setContentText(contentText)
-                .setStyle(new NotificationCompat.BigTextStyle().bigText(contentText + "\n" + note))
-                .setAutoCancel(true)
-                .setContentIntent(pi)
-                .setPriority(NotificationCompat.PRIORITY_HIGH);
+    /**
+     * Direct auto-record mode: no activity, no prompt; the bill is committed by the
+     * repository's batched writer and shows up in the review queue.
+     */
+    private void recordDirectly(double amount, String note, String payApp, long postTime) {
+        Bill bill = new Bill(
+                amount,
+                defaultCategory,
+                note,
+                postTime,
+                null,
+                "AUTO",
+                payApp
+        );
+        bill.needsReview = true;
+        BillRepository.getInstance(this).insertBatched(bill, () -> ListenerWrites.announce(this));
+    }
 
+    /**
+     * Compiles the built-in rules plus the user's overrides once per service start.
+     */
+    private PaymentRuleSet loadRules() {
+        String builtIn = null;
+        String overrides = null;
+        try (InputStream in = getAssets().open(RULES_ASSET)) {
+            builtIn = readUtf8(in);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        File overrideFile = new File(getFilesDir(), RULES_OVERRIDE_FILE);
+        if (overrideFile.exists()) {
+            try (InputStream in = new FileInputStream(overrideFile)) {
+                overrides = readUtf8(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
 
-        NotificationManagerCompat nm = NotificationManagerCompat.from(this);
         try {
-            if (android.os.Build.VERSION.SDK_INT >= android.os.Build.VERSION_CODES.TIRAMISU) {
-                if (androidx.core.content.ContextCompat.checkSelfPermission(
-                        this,
-                        android.Manifest.permission.POST_NOTIFICATIONS
-                ) != android.content.pm.PackageManager.PERMISSION_GRANTED) {
-                    // no permission
-                    return;
-                }
-            }
-            nm.notify(requestCode, builder.build());
-        } catch (SecurityException e) {
+            return PaymentRuleLoader.compile(builtIn, overrides);
+        } catch (JSONException | RuntimeException e) {
+            // A broken override file must not disable the built-in rules
             e.printStackTrace();
+            try {
+                return PaymentRuleLoader.compile(builtIn);
+            } catch (JSONException | RuntimeException e2) {
+                e2.printStackTrace();
+                return PaymentRuleSet.EMPTY;
+            }
         }
+    }
 
+    private static String readUtf8(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[4096];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
     }
 
     private void createChannelIfNeeded() {
@@ -147,90 +304,11 @@ public class PaymentNotificationListenerService extends NotificationListenerServ
         if (nm == null) return;
 
         NotificationChannel channel = new NotificationChannel(
-                CHANNEL_ID,
+                CaptureNotifier.CHANNEL_ID,
                 getString(R.string.channel_auto_capture),
                 NotificationManager.IMPORTANCE_HIGH
         );
         channel.setDescription(getString(R.string.channel_auto_capture_desc));
         nm.createNotificationChannel(channel);
     }
-
-    private static String safeToString(CharSequence cs) {
-        return cs == null ? "" : cs.toString();
-    }
-
-    /**
-     * A simple heuristic parser that tries to detect a "payment amount" from notification text.
-     *
-     * It intentionally avoids matching arbitrary numbers:
-     * - Prefer explicit "￥/¥"
-     * - Or a number followed by "元"
-     * - Require payment-related keywords
-     */
-    private static ParseResult parsePayment(String content) {
-        String s = content.replace("\u00A0", " ").trim();
-
-        // Must contain at least one payment keyword
-        // This avoids matching order IDs etc.
-        boolean hasKeyword = containsAny(s, "转账", "收款","支付", "付款", "消费", "扣款", "支出", "已付款", "支付成功");
-        if (!hasKeyword) {
-            return null;
-        }
-
-        Double amount = extractAmount(s);
-        if (amount == null) return null;
-
-        if (amount <= 0 || amount > 100000) return null;
-
-        // note: we keep a shortened context (optional)
-        String note = s;
-        if (note.length() > 60) {
-            note = note.substring(0, 60) + "...";
-        }
-
-        return new ParseResult(amount, note);
-    }
-
-    private static boolean containsAny(String s, String... keys) {
-        for (String k : keys) {
-            if (s.contains(k)) return true;
-        }
-        return false;
-    }
-
-    private static Double extractAmount(String s) {
-        // 1) Prefer ￥/¥
-        Pattern p1 = Pattern.compile("(?:￥|¥)\\s*([0-9]+(?:\\.[0-9]{1,2})?)");
-        Matcher m1 = p1.matcher(s);
-        if (m1.find()) {
-            return safeParseDouble(m1.group(1));
-        }
-
-        // 2) number + 元
-        Pattern p2 = Pattern.compile("([0-9]+(?:\\.[0-9]{1,2})?)\\s*元");
-        Matcher m2 = p2.matcher(s);
-        if (m2.find()) {
-            return safeParseDouble(m2.group(1));
-        }
-
-        return null;
-    }
-
-    private static Double safeParseDouble(String num) {
-        try {
-            return Double.parseDouble(num);
-        } catch (Exception e) {
-            return null;
-        }
-    }
-
-    private static final class ParseResult {
-        final double amount;
-        final String note;
-
-        ParseResult(double amount, String note) {
-            this.amount = amount;
-            this.note = note;
-        }
-    }
 }
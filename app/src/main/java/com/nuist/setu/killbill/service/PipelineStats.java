@@ -0,0 +1,62 @@
+package com.nuist.setu.killbill.service;
+
+import java.io.PrintWriter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free counters for the notification capture pipeline.
+ *
+ * Per stage: number of samples, total and max latency. The LISTENER stage is the time
+ * spent on the listener's main looper per notification and is the one that must stay tiny.
+ * Dump with: adb shell dumpsys activity service .service.PaymentNotificationListenerService
+ */
+public final class PipelineStats {
+
+    public static final int STAGE_LISTENER = 0;
+    public static final int STAGE_QUEUE_WAIT = 1;
+    public static final int STAGE_PARSE = 2;
+    public static final int STAGE_DEDUP = 3;
+    public static final int STAGE_DISPATCH = 4;
+
+    private static final String[] STAGE_NAMES = {"listener", "queue-wait", "parse", "dedup", "dispatch"};
+    private static final int STAGES = STAGE_NAMES.length;
+
+    public static final PipelineStats INSTANCE = new PipelineStats();
+
+    private final AtomicLongArray counts = new AtomicLongArray(STAGES);
+    private final AtomicLongArray totalNanos = new AtomicLongArray(STAGES);
+    private final AtomicLongArray maxNanos = new AtomicLongArray(STAGES);
+
+    final AtomicLong received = new AtomicLong();
+    final AtomicLong ignoredPackage = new AtomicLong();
+    final AtomicLong coalesced = new AtomicLong();
+    final AtomicLong dropped = new AtomicLong();
+    final AtomicLong payments = new AtomicLong();
+    final AtomicLong duplicates = new AtomicLong();
+    final AtomicLong caughtUp = new AtomicLong();
+
+    private PipelineStats() {}
+
+    void record(int stage, long nanos) {
+        counts.incrementAndGet(stage);
+        totalNanos.addAndGet(stage, nanos);
+        long max;
+        do {
+            max = maxNanos.get(stage);
+        } while (nanos > max && !maxNanos.compareAndSet(stage, max, nanos));
+    }
+
+    public void dump(PrintWriter pw) {
+        pw.printf(Locale.US, "received=%d ignoredPackage=%d caughtUp=%d coalesced=%d dropped=%d payments=%d duplicates=%d%n",
+                received.get(), ignoredPackage.get(), caughtUp.get(), coalesced.get(), dropped.get(),
+                payments.get(), duplicates.get());
+        for (int i = 0; i < STAGES; i++) {
+            long n = counts.get(i);
+            double avgUs = n == 0 ? 0 : totalNanos.get(i) / 1000.0 / n;
+            pw.printf(Locale.US, "  %-10s n=%d avg=%.1fus max=%.1fus%n",
+                    STAGE_NAMES[i], n, avgUs, maxNanos.get(i) / 1000.0);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.nuist.setu.killbill.service.parser;
+
+/**
+ * Hand-written amount scanner for the notification parser. Finds
+ *   prefix [sign] amount     e.g. "￥12.50", "¥ 8", "RMB1,234.00", "-￥3.00"
+ *   [sign] amount suffix     e.g. "12.50元", "１２块", "88 CNY"
+ * where amount is a run of digits, optionally with thousands separators ("," or "，" followed
+ * by exactly three digits) and at most two fraction digits. Full-width digits, decimal point
+ * and signs are accepted too. Prefix/suffix tokens come from the per-app {@link PaymentRule}
+ * and match ASCII case-insensitively.
+ *
+ * Works directly on the notification's CharSequence extras (no toString / concatenation),
+ * does not allocate and returns exact integer cents, negative if the amount carries a minus
+ * sign. {@link #NOT_FOUND} means no match.
+ */
+public final class AmountScanner implements PaymentParser.AmountExtractor {
+
+    public static final long NOT_FOUND = Long.MIN_VALUE;
+
+    static final AmountScanner INSTANCE = new AmountScanner();
+
+    // Anything above this is not a notification amount; also keeps the arithmetic far from overflow
+    private static final long MAX_INTEGER_PART = 1_000_000_000_000L;
+
+    private AmountScanner() {}
+
+    @Override
+    public long findAfterPrefix(CharSequence s, String[] prefixes) {
+        return scanAfterPrefix(s, prefixes);
+    }
+
+    @Override
+    public long findBeforeSuffix(CharSequence s, String[] suffixes) {
+        return scanBeforeSuffix(s, suffixes);
+    }
+
+    /**
+     * Amount following one of the prefixes, in cents.
+     */
+    public static long scanAfterPrefix(CharSequence s, String[] prefixes) {
+        if (s == null || prefixes.length == 0) return NOT_FOUND;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            int afterPrefix = matchAny(s, i, prefixes);
+            if (afterPrefix < 0) continue;
+
+            // "-￥3.00" or "￥-3.00"
+            boolean negative = i > 0 && isMinus(s.charAt(i - 1));
+            int j = skipSpaces(s, afterPrefix);
+            if (j < n && (isMinus(s.charAt(j)) || isPlus(s.charAt(j)))) {
+                negative |= isMinus(s.charAt(j));
+                j = skipSpaces(s, j + 1);
+            }
+
+            int end = amountEnd(s, j);
+            if (end < 0) continue;
+            long cents = toCents(s, j, end);
+            if (cents == NOT_FOUND) continue;
+            return negative ? -cents : cents;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Amount followed by one of the suffixes, in cents.
+     */
+    public static long scanBeforeSuffix(CharSequence s, String[] suffixes) {
+        if (s == null || suffixes.length == 0) return NOT_FOUND;
+        int n = s.length();
+        int i = 0;
+        while (i < n) {
+            if (!isDigit(s.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            int end = amountEnd(s, i);
+            if (end >= 0 && matchAny(s, skipSpaces(s, end), suffixes) >= 0) {
+                long cents = toCents(s, i, end);
+                if (cents != NOT_FOUND) {
+                    return i > 0 && isMinus(s.charAt(i - 1)) ? -cents : cents;
+                }
+            }
+            // Never restart inside a number: "1.234元" is not "234元"
+            i = tokenEnd(s, i);
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * A string that is nothing but an unsigned amount (surrounding spaces allowed), e.g. typed
+     * by the user, in cents.
+     */
+    public static long parseExact(CharSequence s) {
+        if (s == null) return NOT_FOUND;
+        int n = s.length();
+        while (n > 0 && isSpace(s.charAt(n - 1))) n--;
+        int start = skipSpaces(s, 0);
+        if (amountEnd(s, start) != n) return NOT_FOUND;
+        return toCents(s, start, n);
+    }
+
+    /**
+     * End of the amount starting at {@code start}, or -1 if there is none
+     * (no digit, or more than two fraction digits).
+     */
+    private static int amountEnd(CharSequence s, int start) {
+        int n = s.length();
+        if (start >= n || !isDigit(s.charAt(start))) return -1;
+
+        int i = start;
+        while (i < n && isDigit(s.charAt(i))) i++;
+
+        // Thousands separators only after a leading group of 1-3 digits
+        if (i - start <= 3) {
+            while (i < n && isGroupSeparator(s.charAt(i)) && isDigitGroup(s, i + 1)) {
+                i += 4;
+            }
+        }
+
+        if (i + 1 < n && isDecimalPoint(s.charAt(i)) && isDigit(s.charAt(i + 1))) {
+            int j = i + 1;
+            while (j < n && isDigit(s.charAt(j))) j++;
+            return j - i - 1 <= 2 ? j : -1;
+        }
+        return i;
+    }
+
+    /**
+     * Exactly three digits at {@code at}, not followed by a fourth.
+     */
+    private static boolean isDigitGroup(CharSequence s, int at) {
+        int n = s.length();
+        if (at + 3 > n) return false;
+        for (int k = at; k < at + 3; k++) {
+            if (!isDigit(s.charAt(k))) return false;
+        }
+        return at + 3 == n || !isDigit(s.charAt(at + 3));
+    }
+
+    /**
+     * End of the run of digits / separators / decimal points starting at {@code start}.
+     */
+    private static int tokenEnd(CharSequence s, int start) {
+        int n = s.length();
+        int i = start;
+        while (i < n) {
+            char c = s.charAt(i);
+            if (!isDigit(c) && !isDecimalPoint(c) && !isGroupSeparator(c)) break;
+            i++;
+        }
+        return i;
+    }
+
+    private static long toCents(CharSequence s, int start, int end) {
+        long integer = 0;
+        long fraction = 0;
+        int fractionDigits = -1;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (isDecimalPoint(c)) {
+                fractionDigits = 0;
+                continue;
+            }
+            if (!isDigit(c)) continue; // group separator
+            int digit = digitValue(c);
+            if (fractionDigits < 0) {
+                integer = integer * 10 + digit;
+                if (integer > MAX_INTEGER_PART) return NOT_FOUND;
+            } else {
+                fraction = fraction * 10 + digit;
+                fractionDigits++;
+            }
+        }
+        if (fractionDigits == 1) fraction *= 10;
+        return integer * 100 + fraction;
+    }
+
+    /**
+     * @return index just past the first token matching at {@code at}, or -1
+     */
+    private static int matchAny(CharSequence s, int at, String[] tokens) {
+        for (String t : tokens) {
+            if (regionMatches(s, at, t)) return at + t.length();
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(CharSequence s, int at, String token) {
+        int len = token.length();
+        if (len == 0 || at + len > s.length()) return false;
+        for (int k = 0; k < len; k++) {
+            if (foldAscii(s.charAt(at + k)) != foldAscii(token.charAt(k))) return false;
+        }
+        return true;
+    }
+
+    private static char foldAscii(char c) {
+        return c >= 'a' && c <= 'z' ? (char) (c - ('a' - 'A')) : c;
+    }
+
+    private static int skipSpaces(CharSequence s, int i) {
+        int n = s.length();
+        while (i < n && isSpace(s.charAt(i))) i++;
+        return i;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == '\u000B'
+                || c == '\u00A0' || c == '\u3000';
+    }
+
+    private static boolean isDigit(char c) {
+        return (c >= '0' && c <= '9') || (c >= '\uFF10' && c <= '\uFF19');
+    }
+
+    private static int digitValue(char c) {
+        return c <= '9' ? c - '0' : c - '\uFF10';
+    }
+
+    private static boolean isDecimalPoint(char c) {
+        return c == '.' || c == '\uFF0E';
+    }
+
+    private static boolean isGroupSeparator(char c) {
+        return c == ',' || c == '\uFF0C';
+    }
+
+    private static boolean isMinus(char c) {
+        return c == '-' || c == '\u2212' || c == '\uFF0D';
+    }
+
+    private static boolean isPlus(char c) {
+        return c == '+' || c == '\uFF0B';
+    }
+}
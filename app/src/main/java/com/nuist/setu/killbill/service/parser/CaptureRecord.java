@@ -0,0 +1,53 @@
+package com.nuist.setu.killbill.service.parser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * One captured notification, as written by the on-device recorder and read back by the
+ * replay harness (app/src/test, ReplayRunner).
+ *
+ * Stored as one JSON object per line:
+ * <pre>
+ * {"package":"com.tencent.mm","title":"微信支付","text":"已支付￥12.50","bigText":null,
+ *  "postTime":1700000000000,"expectedCents":1250}
+ * </pre>
+ * {@code expectedCents} is a hand-written label and absent in fresh recordings: a positive value
+ * is the spend the parser should find, 0 means "not a spend" (chat, ad, income).
+ */
+public final class CaptureRecord {
+
+    public static final long UNLABELLED = -1;
+
+    public final String packageName;
+    public final String title;
+    public final String text;
+    public final String bigText;
+    public final long postTime;
+    public final long expectedCents;
+
+    public CaptureRecord(String packageName, String title, String text, String bigText,
+                         long postTime, long expectedCents) {
+        this.packageName = packageName;
+        this.title = title;
+        this.text = text;
+        this.bigText = bigText;
+        this.postTime = postTime;
+        this.expectedCents = expectedCents;
+    }
+
+    public boolean isLabelled() {
+        return expectedCents != UNLABELLED;
+    }
+
+    public String toJson() throws JSONException {
+        JSONObject o = new JSONObject();
+        o.put("package", packageName);
+        o.put("title", title == null ? JSONObject.NULL : title);
+        o.put("text", text == null ? JSONObject.NULL : text);
+        o.put("bigText", bigText == null ? JSONObject.NULL : bigText);
+        o.put("postTime", postTime);
+        if (isLabelled()) o.put("expectedCents", expectedCents);
+        return o.toString();
+    }
+}
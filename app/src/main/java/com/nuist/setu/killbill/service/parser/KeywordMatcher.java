@@ -0,0 +1,174 @@
+package com.nuist.setu.killbill.service.parser;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Aho–Corasick automaton for a fixed keyword set.
+ *
+ * The automaton is compiled into a dense DFA over the (small) alphabet of characters
+ * that actually appear in the keywords, so a scan is a single pass over the input with
+ * one table lookup per character and no allocation. Characters outside the alphabet
+ * reset the automaton to the root.
+ *
+ * Immutable and safe to share between threads once built.
+ */
+public final class KeywordMatcher {
+
+    private static final int ROOT = 0;
+
+    // Open-addressing char -> symbol map
+    private final char[] symbolKeys;
+    private final int[] symbolValues;
+    private final int symbolMask;
+
+    private final int alphabetSize;
+    // transitions[state * alphabetSize + symbol] -> next state
+    private final int[] transitions;
+    // index of a keyword ending at a state (own keyword first, then via fail links), or -1
+    private final int[] output;
+
+    private final String[] keywords;
+
+    public KeywordMatcher(String... keywords) {
+        this.keywords = keywords.clone();
+
+        // 1) alphabet
+        StringBuilder alphabet = new StringBuilder();
+        for (String k : keywords) {
+            for (int i = 0; i < k.length(); i++) {
+                char c = k.charAt(i);
+                if (alphabet.indexOf(String.valueOf(c)) < 0) alphabet.append(c);
+            }
+        }
+        alphabetSize = Math.max(1, alphabet.length());
+
+        int capacity = Integer.highestOneBit(Math.max(2, alphabetSize * 2) - 1) << 1;
+        symbolKeys = new char[capacity];
+        symbolValues = new int[capacity];
+        symbolMask = capacity - 1;
+        Arrays.fill(symbolValues, -1);
+        for (int i = 0; i < alphabet.length(); i++) {
+            putSymbol(alphabet.charAt(i), i);
+        }
+
+        // 2) trie
+        List<int[]> gotoRows = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        gotoRows.add(newRow());
+        outputs.add(-1);
+        for (int k = 0; k < keywords.length; k++) {
+            String word = keywords[k];
+            if (word.isEmpty()) continue;
+            int state = ROOT;
+            for (int i = 0; i < word.length(); i++) {
+                int sym = symbol(word.charAt(i));
+                int next = gotoRows.get(state)[sym];
+                if (next < 0) {
+                    next = gotoRows.size();
+                    gotoRows.add(newRow());
+                    outputs.add(-1);
+                    gotoRows.get(state)[sym] = next;
+                }
+                state = next;
+            }
+            int existing = outputs.get(state);
+            if (existing < 0 || keywords[existing].length() > word.length()) {
+                outputs.set(state, k);
+            }
+        }
+
+        // 3) BFS: fail links folded into a complete DFA
+        int stateCount = gotoRows.size();
+        transitions = new int[stateCount * alphabetSize];
+        output = new int[stateCount];
+        int[] fail = new int[stateCount];
+        for (int s = 0; s < stateCount; s++) output[s] = outputs.get(s);
+
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        int[] rootRow = gotoRows.get(ROOT);
+        for (int sym = 0; sym < alphabetSize; sym++) {
+            int next = rootRow[sym];
+            if (next < 0) {
+                transitions[sym] = ROOT;
+            } else {
+                transitions[sym] = next;
+                fail[next] = ROOT;
+                queue.add(next);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            if (output[state] < 0) output[state] = output[fail[state]];
+            int[] row = gotoRows.get(state);
+            for (int sym = 0; sym < alphabetSize; sym++) {
+                int next = row[sym];
+                int viaFail = transitions[fail[state] * alphabetSize + sym];
+                if (next < 0) {
+                    transitions[state * alphabetSize + sym] = viaFail;
+                } else {
+                    transitions[state * alphabetSize + sym] = next;
+                    fail[next] = viaFail;
+                    queue.add(next);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return true if any keyword occurs in {@code text}
+     */
+    public boolean containsAny(CharSequence text) {
+        return indexOfFirstMatch(text) >= 0;
+    }
+
+    /**
+     * @return the index (into the constructor's keyword array) of the first keyword
+     * to complete while scanning {@code text} left to right, or -1
+     */
+    public int indexOfFirstMatch(CharSequence text) {
+        if (text == null) return -1;
+        int state = ROOT;
+        for (int i = 0, n = text.length(); i < n; i++) {
+            int sym = symbol(text.charAt(i));
+            state = sym < 0 ? ROOT : transitions[state * alphabetSize + sym];
+            if (output[state] >= 0) return output[state];
+        }
+        return -1;
+    }
+
+    public String keyword(int index) {
+        return keywords[index];
+    }
+
+    private int[] newRow() {
+        int[] row = new int[alphabetSize];
+        Arrays.fill(row, -1);
+        return row;
+    }
+
+    private void putSymbol(char c, int value) {
+        int slot = hash(c) & symbolMask;
+        while (symbolValues[slot] >= 0) {
+            slot = (slot + 1) & symbolMask;
+        }
+        symbolKeys[slot] = c;
+        symbolValues[slot] = value;
+    }
+
+    private int symbol(char c) {
+        int slot = hash(c) & symbolMask;
+        while (true) {
+            int v = symbolValues[slot];
+            if (v < 0) return -1;
+            if (symbolKeys[slot] == c) return v;
+            slot = (slot + 1) & symbolMask;
+        }
+    }
+
+    private static int hash(char c) {
+        return c * 0x9E3779B1 >>> 16;
+    }
+}
@@ -0,0 +1,54 @@
+package com.nuist.setu.killbill.service.parser;
+
+/**
+ * A payment recognised in a notification.
+ */
+public final class ParsedPayment {
+
+    /**
+     * Exact amount in cents (always positive; see {@link #income} for the direction).
+     */
+    public final long cents;
+
+    /**
+     * {@link #cents} in yuan, as stored in {@code Bill.amount}.
+     */
+    public final double amount;
+
+    /**
+     * Shortened notification text, used as the bill note.
+     */
+    public final String note;
+
+    /**
+     * {@link PaymentRule#appName} of the rule that matched.
+     */
+    public final String paymentApp;
+
+    /**
+     * Merchant / counterparty, or null if no merchant pattern matched.
+     */
+    public final String merchant;
+
+    /**
+     * true if money came in (refund, transfer received ...), false for a spend.
+     */
+    public final boolean income;
+
+    /**
+     * true if a payment phrase was found in the notification body, not only in its title.
+     * Only these are safe to record without asking.
+     */
+    public final boolean confident;
+
+    public ParsedPayment(long cents, String note, String paymentApp, String merchant,
+                         boolean income, boolean confident) {
+        this.cents = cents;
+        this.amount = cents / 100.0;
+        this.note = note;
+        this.paymentApp = paymentApp;
+        this.merchant = merchant;
+        this.income = income;
+        this.confident = confident;
+    }
+}
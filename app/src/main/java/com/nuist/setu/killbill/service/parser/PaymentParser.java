@@ -0,0 +1,150 @@
+package com.nuist.setu.killbill.service.parser;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A simple heuristic parser that tries to detect a "payment amount" from notification text,
+ * driven by the compiled {@link PaymentRule} of the posting app.
+ *
+ * It intentionally avoids matching arbitrary numbers:
+ * - Require one of the rule's payment keywords (avoids matching order IDs etc.); a match in
+ *   the title alone still parses but isn't {@link ParsedPayment#confident}
+ * - Prefer an amount after one of the rule's prefixes (e.g. "￥/¥")
+ * - Or an amount before one of its suffixes (e.g. "元")
+ *
+ * Direction comes from the rule's income keywords; a minus sign on the amount only counts
+ * as income for rules that say so ({@link PaymentRule#minusMeansIncome}).
+ *
+ * Title, text and big text are scanned in place; Strings are only built (note, merchant)
+ * once a payment has actually been recognised. Stateless and thread-safe.
+ */
+public final class PaymentParser {
+
+    /**
+     * Finds an amount in cents next to a prefix / suffix; {@link AmountScanner#NOT_FOUND} if none.
+     * Swappable so the replay harness (app/src/test) can compare against the old regex path.
+     */
+    interface AmountExtractor {
+        long findAfterPrefix(CharSequence s, String[] prefixes);
+
+        long findBeforeSuffix(CharSequence s, String[] suffixes);
+    }
+
+    private static final int MAX_NOTE_LENGTH = 60;
+    /**
+     * Largest amount taken as a payment; anything above is a misread number.
+     */
+    public static final long MAX_CENTS = 100000 * 100L;
+
+    private final AmountExtractor amounts;
+
+    public PaymentParser() {
+        this(AmountScanner.INSTANCE);
+    }
+
+    PaymentParser(AmountExtractor amounts) {
+        this.amounts = amounts;
+    }
+
+    /**
+     * @return the recognised payment, or null if the notification doesn't look like one
+     */
+    public ParsedPayment parse(PaymentRule rule,
+                               CharSequence title, CharSequence text, CharSequence bigText) {
+        boolean inBody = rule.keywords.containsAny(text) || rule.keywords.containsAny(bigText);
+        if (!inBody && !rule.keywords.containsAny(title)) return null;
+
+        long cents = extractCents(rule, title, text, bigText);
+        if (cents == AmountScanner.NOT_FOUND) return null;
+
+        boolean income = (cents < 0 && rule.minusMeansIncome)
+                || rule.incomeKeywords.containsAny(title)
+                || rule.incomeKeywords.containsAny(text)
+                || rule.incomeKeywords.containsAny(bigText);
+        cents = Math.abs(cents);
+        if (cents == 0 || cents > MAX_CENTS) return null;
+
+        return new ParsedPayment(
+                cents,
+                buildNote(title, text, bigText),
+                rule.appName,
+                extractMerchant(rule, title, text, bigText),
+                income,
+                inBody);
+    }
+
+    private long extractCents(PaymentRule rule,
+                              CharSequence title, CharSequence text, CharSequence bigText) {
+        // 1) Prefer an explicit currency prefix
+        String[] prefixes = rule.amountPrefixes;
+        long cents = amounts.findAfterPrefix(title, prefixes);
+        if (cents == AmountScanner.NOT_FOUND) cents = amounts.findAfterPrefix(text, prefixes);
+        if (cents == AmountScanner.NOT_FOUND) cents = amounts.findAfterPrefix(bigText, prefixes);
+        if (cents != AmountScanner.NOT_FOUND) return cents;
+
+        // 2) number + unit suffix
+        String[] suffixes = rule.amountSuffixes;
+        cents = amounts.findBeforeSuffix(title, suffixes);
+        if (cents == AmountScanner.NOT_FOUND) cents = amounts.findBeforeSuffix(text, suffixes);
+        if (cents == AmountScanner.NOT_FOUND) cents = amounts.findBeforeSuffix(bigText, suffixes);
+        return cents;
+    }
+
+    private static String extractMerchant(PaymentRule rule,
+                                          CharSequence title, CharSequence text, CharSequence bigText) {
+        for (Pattern p : rule.merchantPatterns) {
+            String m = findGroup(p, text);
+            if (m == null) m = findGroup(p, bigText);
+            if (m == null) m = findGroup(p, title);
+            if (m != null) return m;
+        }
+        return null;
+    }
+
+    private static String findGroup(Pattern p, CharSequence s) {
+        if (s == null || s.length() == 0) return null;
+        Matcher m = p.matcher(s);
+        if (!m.find() || m.groupCount() < 1) return null;
+        String g = m.group(1);
+        if (g == null) return null;
+        g = g.trim();
+        return g.isEmpty() ? null : g;
+    }
+
+    /**
+     * "title text bigText", trimmed, with NBSP normalised and shortened to 60 chars.
+     */
+    private static String buildNote(CharSequence title, CharSequence text, CharSequence bigText) {
+        StringBuilder sb = new StringBuilder(MAX_NOTE_LENGTH + 3);
+        appendPart(sb, title);
+        appendPart(sb, text);
+        appendPart(sb, bigText);
+        if (sb.length() > MAX_NOTE_LENGTH) {
+            sb.setLength(MAX_NOTE_LENGTH);
+            sb.append("...");
+        }
+        return sb.toString();
+    }
+
+    private static void appendPart(StringBuilder sb, CharSequence part) {
+        if (part == null) return;
+
+        int start = 0;
+        int end = part.length();
+        while (start < end && Character.isWhitespace(normalize(part.charAt(start)))) start++;
+        while (end > start && Character.isWhitespace(normalize(part.charAt(end - 1)))) end--;
+        if (start == end) return;
+
+        if (sb.length() > 0) sb.append(' ');
+        // Only the first MAX_NOTE_LENGTH + 1 chars matter for the note
+        int limit = Math.min(end, start + MAX_NOTE_LENGTH + 1);
+        for (int i = start; i < limit; i++) {
+            sb.append(normalize(part.charAt(i)));
+        }
+    }
+
+    private static char normalize(char c) {
+        return c == '\u00A0' ? ' ' : c;
+    }
+}
@@ -0,0 +1,63 @@
+package com.nuist.setu.killbill.service.parser;
+
+import java.util.regex.Pattern;
+
+/**
+ * Compiled parsing rule for one notifying app (see assets/payment_rules.json).
+ * Built once when the rules are loaded and shared by every notification from that package.
+ */
+public final class PaymentRule {
+
+    public final String packageName;
+
+    /**
+     * Label stored in {@code Bill.paymentApp}, e.g. "支付宝".
+     */
+    public final String appName;
+
+    /**
+     * At least one must occur for the notification to count as a payment.
+     */
+    public final KeywordMatcher keywords;
+
+    /**
+     * Marks money coming in (refund, transfer received, salary ...).
+     */
+    public final KeywordMatcher incomeKeywords;
+
+    public final String[] amountPrefixes;
+    public final String[] amountSuffixes;
+
+    /**
+     * Whether a minus sign before the amount marks money coming in ("minusMeans": "income",
+     * e.g. an app that shows reversals as "-￥3.00"). By default it doesn't: bank and wallet
+     * ledgers write spending as "-￥25.00", and direction is left to the income keywords.
+     */
+    public final boolean minusMeansIncome;
+
+    /**
+     * Regexes with the merchant name in group 1; tried in order.
+     */
+    public final Pattern[] merchantPatterns;
+
+    public PaymentRule(String packageName,
+                       String appName,
+                       String[] keywords,
+                       String[] incomeKeywords,
+                       String[] amountPrefixes,
+                       String[] amountSuffixes,
+                       boolean minusMeansIncome,
+                       String[] merchantPatterns) {
+        this.packageName = packageName;
+        this.appName = appName;
+        this.keywords = new KeywordMatcher(keywords);
+        this.incomeKeywords = new KeywordMatcher(incomeKeywords);
+        this.amountPrefixes = amountPrefixes.clone();
+        this.amountSuffixes = amountSuffixes.clone();
+        this.minusMeansIncome = minusMeansIncome;
+        this.merchantPatterns = new Pattern[merchantPatterns.length];
+        for (int i = 0; i < merchantPatterns.length; i++) {
+            this.merchantPatterns[i] = Pattern.compile(merchantPatterns[i]);
+        }
+    }
+}
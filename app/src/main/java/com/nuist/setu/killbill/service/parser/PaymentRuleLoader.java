@@ -0,0 +1,87 @@
+package com.nuist.setu.killbill.service.parser;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Compiles JSON rule documents into a {@link PaymentRuleSet}.
+ *
+ * Format:
+ * <pre>
+ * { "rules": [ {
+ *     "package": "com.eg.android.AlipayGphone",
+ *     "app": "支付宝",
+ *     "keywords": ["付款", "支付"],
+ *     "incomeKeywords": ["收款到账", "退款"],
+ *     "amountPrefixes": ["￥", "¥"],
+ *     "amountSuffixes": ["元"],
+ *     "minusMeans": "expense",
+ *     "merchantPatterns": ["向(.+?)付款"],
+ *     "enabled": true
+ * } ] }
+ * </pre>
+ * "minusMeans" is "expense" (default: a signed amount is still a spend unless an income
+ * keyword says otherwise) or "income".
+ * Later documents override earlier ones per package (built-in rules first, then user
+ * overrides); {@code "enabled": false} removes a package entirely.
+ */
+public final class PaymentRuleLoader {
+
+    private PaymentRuleLoader() {}
+
+    /**
+     * @param documents JSON documents in increasing priority; null entries are skipped
+     */
+    public static PaymentRuleSet compile(String... documents) throws JSONException {
+        Map<String, PaymentRule> rules = new LinkedHashMap<>();
+        for (String doc : documents) {
+            if (doc == null || doc.trim().isEmpty()) continue;
+
+            JSONArray array = new JSONObject(doc).getJSONArray("rules");
+            for (int i = 0; i < array.length(); i++) {
+                JSONObject o = array.getJSONObject(i);
+                String pkg = o.getString("package");
+                if (!o.optBoolean("enabled", true)) {
+                    rules.remove(pkg);
+                    continue;
+                }
+                rules.put(pkg, new PaymentRule(
+                        pkg,
+                        o.optString("app", pkg),
+                        strings(o, "keywords"),
+                        strings(o, "incomeKeywords"),
+                        strings(o, "amountPrefixes"),
+                        strings(o, "amountSuffixes"),
+                        minusMeansIncome(o),
+                        strings(o, "merchantPatterns")));
+            }
+        }
+        return new PaymentRuleSet(rules.values());
+    }
+
+    private static boolean minusMeansIncome(JSONObject o) throws JSONException {
+        String value = o.optString("minusMeans", "expense");
+        switch (value) {
+            case "expense":
+                return false;
+            case "income":
+                return true;
+            default:
+                throw new JSONException("minusMeans must be \"expense\" or \"income\": " + value);
+        }
+    }
+
+    private static String[] strings(JSONObject o, String name) throws JSONException {
+        JSONArray array = o.optJSONArray(name);
+        if (array == null) return new String[0];
+        String[] out = new String[array.length()];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = array.getString(i);
+        }
+        return out;
+    }
+}
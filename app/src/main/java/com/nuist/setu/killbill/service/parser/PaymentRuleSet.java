@@ -0,0 +1,40 @@
+package com.nuist.setu.killbill.service.parser;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Compiled rules indexed by package name, so a notification from an unrelated app
+ * costs a single hash probe.
+ */
+public final class PaymentRuleSet {
+
+    public static final PaymentRuleSet EMPTY = new PaymentRuleSet(Collections.emptyList());
+
+    private final Map<String, PaymentRule> byPackage;
+
+    public PaymentRuleSet(Collection<PaymentRule> rules) {
+        Map<String, PaymentRule> map = new HashMap<>(rules.size() * 2);
+        for (PaymentRule r : rules) {
+            map.put(r.packageName, r);
+        }
+        this.byPackage = Collections.unmodifiableMap(map);
+    }
+
+    /**
+     * @return the rule for the package, or null if the app isn't watched
+     */
+    public PaymentRule forPackage(String packageName) {
+        return packageName == null ? null : byPackage.get(packageName);
+    }
+
+    public Collection<PaymentRule> all() {
+        return byPackage.values();
+    }
+
+    public int size() {
+        return byPackage.size();
+    }
+}
@@ -9,6 +9,7 @@ import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
 import android.text.TextUtils;
+import android.text.format.Formatter;
 import android.widget.ArrayAdapter;
 import android.widget.Toast;
 
@@ -26,6 +27,8 @@ import com.nuist.setu.killbill.data.Bill;
 import com.nuist.setu.killbill.databinding.ActivityAddEditBillBinding;
 import com.nuist.setu.killbill.ui.viewmodel.EditBillViewModel;
 import com.nuist.setu.killbill.util.DateTimeUtils;
+import com.nuist.setu.killbill.util.ReceiptCompressor;
+import com.nuist.setu.killbill.util.ReceiptThumbnails;
 
 import java.io.File;
 import java.util.Calendar;
@@ -58,6 +61,7 @@ public class AddEditBillActivity extends AppCompatActivity {
     private String receiptUriString = null;
 
     private Uri pendingPhotoUri = null;
+    private File pendingPhotoFile = null;
 
     private ActivityResultLauncher<String> requestCameraPermission;
     private ActivityResultLauncher<Uri> takePictureLauncher;
@@ -68,6 +72,7 @@ public class AddEditBillActivity extends AppCompatActivity {
 
         binding = ActivityAddEditBillBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
+        FrameStats.track(this, "AddEditBill");
 
         setSupportActionBar(binding.toolbar);
         binding.toolbar.setNavigationOnClickListener(v -> finish());
@@ -107,15 +112,17 @@ public class AddEditBillActivity extends AppCompatActivity {
                 success -> {
                     if (success && pendingPhotoUri != null) {
                         receiptUriString = pendingPhotoUri.toString();
-                        binding.ivReceipt.setImageURI(pendingPhotoUri);
+                        onPhotoCaptured(pendingPhotoFile, receiptUriString);
                     } else {
                         pendingPhotoUri = null;
+                        pendingPhotoFile = null;
                     }
                 }
         );
 
         // Check if edit mode
         editingBillId = getIntent().getLongExtra(EXTRA_BILL_ID, -1L);
+        FrameStats.putState(this, "mode", editingBillId > 0 ? "edit" : "add");
         if (editingBillId > 0) {
             binding.toolbar.setTitle(R.string.edit_bill);
             binding.btnDelete.setVisibility(android.view.View.VISIBLE);
@@ -139,14 +146,43 @@ public class AddEditBillActivity extends AppCompatActivity {
             updateDateTimeLabel();
 
             receiptUriString = bill.receiptUri;
-            if (!TextUtils.isEmpty(receiptUriString)) {
-                binding.ivReceipt.setImageURI(Uri.parse(receiptUriString));
-            } else {
-                binding.ivReceipt.setImageDrawable(null);
+            showReceiptPreview();
+        });
+    }
+
+    /**
+     * Shrinks the camera's full-size JPEG in place (the URI doesn't change), then writes
+     * the list thumbnail from the smaller, upright file.
+     */
+    private void onPhotoCaptured(File photo, String uri) {
+        ReceiptCompressor.compressAsync(photo, result -> {
+            ReceiptThumbnails.getInstance(this).prepare(uri);
+            if (isDestroyed() || !uri.equals(receiptUriString)) return;
+
+            showReceiptPreview();
+            if (result != null && result.bytesSaved() > 0) {
+                Toast.makeText(this, getString(R.string.receipt_compressed,
+                        Formatter.formatShortFileSize(this, result.bytesAfter),
+                        Formatter.formatShortFileSize(this, result.bytesSaved())),
+                        Toast.LENGTH_SHORT).show();
             }
         });
     }
 
+    /**
+     * Decoded off the main thread and only as large as the preview needs.
+     */
+    private void showReceiptPreview() {
+        ReceiptThumbnails thumbnails = ReceiptThumbnails.getInstance(this);
+        if (TextUtils.isEmpty(receiptUriString)) {
+            thumbnails.clear(binding.ivReceipt);
+            return;
+        }
+        // A full-width, 200dp tall crop: half the screen width on the short side is plenty
+        int sizePx = getResources().getDisplayMetrics().widthPixels / 2;
+        thumbnails.loadPreview(binding.ivReceipt, receiptUriString, sizePx);
+    }
+
     private void applyPrefillIfAny() {
         double prefillAmount = getIntent().getDoubleExtra(EXTRA_PREFILL_AMOUNT, Double.NaN);
         String prefillNote = getIntent().getStringExtra(EXTRA_PREFILL_NOTE);
@@ -228,6 +264,7 @@ public class AddEditBillActivity extends AppCompatActivity {
             }
 
             File photo = new File(dir, "receipt_" + System.currentTimeMillis() + ".jpg");
+            pendingPhotoFile = photo;
             pendingPhotoUri = FileProvider.getUriForFile(
                     this,
                     getPackageName() + ".fileprovider",
@@ -278,6 +315,8 @@ public class AddEditBillActivity extends AppCompatActivity {
             // keep source/paymentApp unchanged if already exists, unless user came from AUTO and wants manual (not needed)
             if (!TextUtils.isEmpty(source)) editingBill.source = source;
             if (!TextUtils.isEmpty(paymentApp)) editingBill.paymentApp = paymentApp;
+            // Saving from the editor confirms an auto-recorded bill
+            editingBill.needsReview = false;
 
             viewModel.update(editingBill);
         } else {
@@ -0,0 +1,389 @@
+package com.nuist.setu.killbill.ui;
+
+import android.app.Activity;
+import android.content.Context;
+
+import androidx.activity.ComponentActivity;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.LifecycleOwner;
+import androidx.metrics.performance.FrameData;
+import androidx.metrics.performance.JankStats;
+import androidx.metrics.performance.PerformanceMetricsState;
+import androidx.metrics.performance.StateInfo;
+
+import com.nuist.setu.killbill.BuildConfig;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Per-screen frame-time histograms, collected with JankStats in debug builds.
+ *
+ * Every frame of a tracked window is counted under a key made of the screen name and the UI
+ * state current at that frame (e.g. "Main tab=all items=100-999 search=on"), which screens
+ * set through {@link #putState}. Frames in the first second after a screen is created are
+ * additionally tagged phase=startup.
+ *
+ * Totals are kept in files/frame_stats.json, written whenever a tracked screen is paused,
+ * so they accumulate across runs. See FrameStatsActivity for the report and export.
+ *
+ * {@link #track} and {@link #putState} are main-thread only; frames are recorded on
+ * JankStats' frame-metrics thread.
+ */
+public final class FrameStats {
+
+    public static final boolean ENABLED = BuildConfig.DEBUG;
+
+    // Upper bounds in ms; the last bucket is everything slower
+    private static final int[] BUCKETS_MS = {4, 8, 12, 16, 24, 33, 50, 100, 250, 700};
+    // Caps the file size if states ever get too many distinct values
+    private static final int MAX_KEYS = 200;
+    private static final String OVERFLOW_KEY = "(other)";
+    private static final long STARTUP_NANOS = 1_000_000_000L;
+    private static final String FILE_NAME = "frame_stats.json";
+
+    private static final class Histogram {
+        final long[] counts = new long[BUCKETS_MS.length + 1];
+        long frames;
+        long janky;
+        long totalNanos;
+        long maxNanos;
+
+        void add(long nanos, boolean jank) {
+            counts[bucketOf(nanos)]++;
+            frames++;
+            if (jank) janky++;
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+        }
+
+        void addAll(Histogram other) {
+            for (int i = 0; i < counts.length; i++) counts[i] += other.counts[i];
+            frames += other.frames;
+            janky += other.janky;
+            totalNanos += other.totalNanos;
+            maxNanos = Math.max(maxNanos, other.maxNanos);
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, -1 if beyond the last bound.
+         */
+        int percentileMs(double p) {
+            long target = (long) Math.ceil(frames * p);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= target) return i < BUCKETS_MS.length ? BUCKETS_MS[i] : -1;
+            }
+            return -1;
+        }
+
+        JSONObject toJson() throws JSONException {
+            JSONObject o = new JSONObject();
+            o.put("frames", frames);
+            o.put("janky", janky);
+            o.put("totalNanos", totalNanos);
+            o.put("maxNanos", maxNanos);
+            JSONArray a = new JSONArray();
+            for (long c : counts) a.put(c);
+            o.put("counts", a);
+            return o;
+        }
+
+        static Histogram fromJson(JSONObject o) throws JSONException {
+            Histogram h = new Histogram();
+            h.frames = o.getLong("frames");
+            h.janky = o.getLong("janky");
+            h.totalNanos = o.getLong("totalNanos");
+            h.maxNanos = o.getLong("maxNanos");
+            JSONArray a = o.getJSONArray("counts");
+            for (int i = 0; i < Math.min(a.length(), h.counts.length); i++) h.counts[i] = a.getLong(i);
+            return h;
+        }
+    }
+
+    private static volatile FrameStats INSTANCE;
+
+    private final File file;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+
+    // Guarded by this
+    private final Map<String, Histogram> histograms = new TreeMap<>();
+    private final StringBuilder keyBuilder = new StringBuilder();
+    private final List<StateInfo> sortedStates = new ArrayList<>();
+
+    private FrameStats(Context context) {
+        this.file = new File(context.getFilesDir(), FILE_NAME);
+        ioExecutor.execute(this::load);
+    }
+
+    public static FrameStats getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (FrameStats.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new FrameStats(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Starts counting the activity's frames under {@code screen} while it is resumed.
+     * Call after setContentView. Does nothing unless {@link #ENABLED}.
+     */
+    public static void track(@NonNull ComponentActivity activity, @NonNull String screen) {
+        if (!ENABLED) return;
+        FrameStats stats = getInstance(activity);
+        long startupEnd = System.nanoTime() + STARTUP_NANOS;
+
+        JankStats jankStats = JankStats.createAndTrack(activity.getWindow(),
+                frame -> stats.record(screen, frame, startupEnd));
+        activity.getLifecycle().addObserver(new DefaultLifecycleObserver() {
+            @Override
+            public void onResume(@NonNull LifecycleOwner owner) {
+                jankStats.setTrackingEnabled(true);
+            }
+
+            @Override
+            public void onPause(@NonNull LifecycleOwner owner) {
+                jankStats.setTrackingEnabled(false);
+                stats.save();
+            }
+        });
+    }
+
+    /**
+     * Tags the activity's following frames with {@code key=value}; null removes the tag.
+     */
+    public static void putState(@NonNull Activity activity, @NonNull String key, @Nullable String value) {
+        if (!ENABLED) return;
+        PerformanceMetricsState state = PerformanceMetricsState
+                .getHolderForHierarchy(activity.getWindow().getDecorView()).getState();
+        if (state == null) return;
+        if (value == null) {
+            state.removeState(key);
+        } else {
+            state.putState(key, value);
+        }
+    }
+
+    /**
+     * Tags only the next frame, e.g. the one that starts a chart animation.
+     */
+    public static void putSingleFrameState(@NonNull Activity activity, @NonNull String key, @NonNull String value) {
+        if (!ENABLED) return;
+        PerformanceMetricsState state = PerformanceMetricsState
+                .getHolderForHierarchy(activity.getWindow().getDecorView()).getState();
+        if (state != null) state.putSingleFrameState(key, value);
+    }
+
+    /**
+     * Coarse list size for a state value, so keys don't multiply with every added bill.
+     */
+    @NonNull
+    public static String sizeBucket(int size) {
+        if (size <= 0) return "0";
+        if (size < 10) return "1-9";
+        if (size < 100) return "10-99";
+        if (size < 1000) return "100-999";
+        return "1000+";
+    }
+
+    /**
+     * Frame-metrics thread. {@code frame} is reused by JankStats and must not be kept.
+     */
+    private synchronized void record(String screen, FrameData frame, long startupEnd) {
+        sortedStates.clear();
+        sortedStates.addAll(frame.getStates());
+        Collections.sort(sortedStates, (a, b) -> a.getKey().compareTo(b.getKey()));
+
+        keyBuilder.setLength(0);
+        keyBuilder.append(screen);
+        for (StateInfo s : sortedStates) {
+            keyBuilder.append(' ').append(s.getKey()).append('=').append(s.getValue());
+        }
+        if (frame.getFrameStartNanos() < startupEnd) keyBuilder.append(" phase=startup");
+
+        String key = keyBuilder.toString();
+        Histogram h = histograms.get(key);
+        if (h == null) {
+            if (histograms.size() >= MAX_KEYS) key = screen + " " + OVERFLOW_KEY;
+            h = histograms.get(key);
+            if (h == null) {
+                h = new Histogram();
+                histograms.put(key, h);
+            }
+        }
+        h.add(frame.getFrameDurationUiNanos(), frame.isJank());
+    }
+
+    public synchronized boolean isEmpty() {
+        return histograms.isEmpty();
+    }
+
+    public synchronized void reset() {
+        histograms.clear();
+        save();
+    }
+
+    /**
+     * Human-readable report, one line per key, slowest (by jank rate) first.
+     */
+    public void dump(@NonNull PrintWriter pw) {
+        List<Map.Entry<String, Histogram>> entries;
+        synchronized (this) {
+            entries = new ArrayList<>();
+            for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+                Histogram copy = new Histogram();
+                copy.addAll(e.getValue());
+                entries.add(new AbstractMap.SimpleEntry<>(e.getKey(), copy));
+            }
+        }
+        Collections.sort(entries, (a, b) -> Double.compare(jankRate(b.getValue()), jankRate(a.getValue())));
+
+        StringBuilder header = new StringBuilder("buckets(ms): ");
+        for (int bound : BUCKETS_MS) header.append("<=").append(bound).append(' ');
+        header.append(">").append(BUCKETS_MS[BUCKETS_MS.length - 1]);
+        pw.println(header);
+
+        for (Map.Entry<String, Histogram> e : entries) {
+            Histogram h = e.getValue();
+            pw.println(e.getKey());
+            pw.printf(Locale.US, "  frames=%d janky=%d (%.1f%%) avg=%.1fms p50=%s p90=%s p99=%s max=%.1fms%n",
+                    h.frames, h.janky, jankRate(h) * 100,
+                    h.frames == 0 ? 0 : h.totalNanos / 1e6 / h.frames,
+                    formatBound(h.percentileMs(0.5)), formatBound(h.percentileMs(0.9)),
+                    formatBound(h.percentileMs(0.99)), h.maxNanos / 1e6);
+            StringBuilder counts = new StringBuilder("  histogram:");
+            for (long c : h.counts) counts.append(' ').append(c);
+            pw.println(counts);
+        }
+    }
+
+    /**
+     * Everything collected so far as JSON, for export.
+     */
+    @NonNull
+    public synchronized String toJson() {
+        try {
+            return snapshotJson().toString(2);
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return "{}";
+        }
+    }
+
+    private synchronized void save() {
+        final String json;
+        try {
+            json = snapshotJson().toString();
+        } catch (JSONException e) {
+            e.printStackTrace();
+            return;
+        }
+        ioExecutor.execute(() -> write(json));
+    }
+
+    private JSONObject snapshotJson() throws JSONException {
+        JSONObject root = new JSONObject();
+        root.put("version", 1);
+        JSONArray buckets = new JSONArray();
+        for (int bound : BUCKETS_MS) buckets.put(bound);
+        root.put("bucketsMs", buckets);
+        JSONObject screens = new JSONObject();
+        for (Map.Entry<String, Histogram> e : histograms.entrySet()) {
+            screens.put(e.getKey(), e.getValue().toJson());
+        }
+        root.put("screens", screens);
+        return root;
+    }
+
+    /**
+     * IO executor; runs before any save, so earlier runs' totals are never overwritten.
+     */
+    private void load() {
+        if (!file.exists()) return;
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] bytes = new byte[(int) file.length()];
+            int read = 0;
+            while (read < bytes.length) {
+                int n = in.read(bytes, read, bytes.length - read);
+                if (n < 0) break;
+                read += n;
+            }
+            JSONObject root = new JSONObject(new String(bytes, 0, read, StandardCharsets.UTF_8));
+            // Bucket bounds changed: old counts can't be merged
+            if (root.getJSONArray("bucketsMs").length() != BUCKETS_MS.length) return;
+
+            JSONObject screens = root.getJSONObject("screens");
+            synchronized (this) {
+                for (Iterator<String> it = screens.keys(); it.hasNext(); ) {
+                    String key = it.next();
+                    Histogram saved = Histogram.fromJson(screens.getJSONObject(key));
+                    Histogram current = histograms.get(key);
+                    if (current == null) {
+                        histograms.put(key, saved);
+                    } else {
+                        current.addAll(saved);
+                    }
+                }
+            }
+        } catch (IOException | JSONException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write(String json) {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(json.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            e.printStackTrace();
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+    }
+
+    private static int bucketOf(long nanos) {
+        for (int i = 0; i < BUCKETS_MS.length; i++) {
+            if (nanos <= BUCKETS_MS[i] * 1_000_000L) return i;
+        }
+        return BUCKETS_MS.length;
+    }
+
+    private static double jankRate(Histogram h) {
+        return h.frames == 0 ? 0 : h.janky / (double) h.frames;
+    }
+
+    private static String formatBound(int ms) {
+        return ms < 0 ? ">" + BUCKETS_MS[BUCKETS_MS.length - 1] + "ms" : "<=" + ms + "ms";
+    }
+}
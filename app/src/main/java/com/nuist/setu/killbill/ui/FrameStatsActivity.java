@@ -0,0 +1,111 @@
+package com.nuist.setu.killbill.ui;
+
+import android.content.Intent;
+import android.net.Uri;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.core.content.FileProvider;
+
+import com.nuist.setu.killbill.R;
+import com.nuist.setu.killbill.databinding.ActivityFrameStatsBinding;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Debug screen: the per-screen frame histograms from {@link FrameStats} and the layout
+ * pre-inflation counters, with export as JSON.
+ */
+public class FrameStatsActivity extends AppCompatActivity {
+
+    private ActivityFrameStatsBinding binding;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        if (!FrameStats.ENABLED) {
+            finish();
+            return;
+        }
+
+        binding = ActivityFrameStatsBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+
+        setSupportActionBar(binding.toolbar);
+        binding.toolbar.setNavigationOnClickListener(v -> finish());
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (binding != null) showReport();
+    }
+
+    private void showReport() {
+        FrameStats frameStats = FrameStats.getInstance(this);
+        if (frameStats.isEmpty()) {
+            binding.tvReport.setText(R.string.frame_stats_empty);
+            return;
+        }
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        frameStats.dump(pw);
+        pw.println();
+        pw.println("LayoutWarmer:");
+        LayoutWarmer.getInstance(this).dump(pw);
+        pw.flush();
+        binding.tvReport.setText(sw.toString());
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_frame_stats, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        int id = item.getItemId();
+        if (id == R.id.action_export_frame_stats) {
+            exportAndShare();
+            return true;
+        } else if (id == R.id.action_reset_frame_stats) {
+            FrameStats.getInstance(this).reset();
+            showReport();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+
+    private void exportAndShare() {
+        try {
+            String ts = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.US).format(new Date());
+            File outFile = new File(getCacheDir(), "killbill_frames_" + ts + ".json");
+            try (FileOutputStream fos = new FileOutputStream(outFile)) {
+                fos.write(FrameStats.getInstance(this).toJson().getBytes(StandardCharsets.UTF_8));
+            }
+
+            Uri uri = FileProvider.getUriForFile(this, getPackageName() + ".fileprovider", outFile);
+
+            Intent share = new Intent(Intent.ACTION_SEND);
+            share.setType("application/json");
+            share.putExtra(Intent.EXTRA_STREAM, uri);
+            share.addFlags(Intent.FLAG_GRANT_READ_URI_PERMISSION);
+
+            startActivity(Intent.createChooser(share, getString(R.string.frame_stats_export)));
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
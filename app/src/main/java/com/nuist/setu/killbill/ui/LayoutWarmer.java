@@ -0,0 +1,257 @@
+package com.nuist.setu.killbill.ui;
+
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.AttributeSet;
+import android.util.SparseArray;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+
+import androidx.annotation.LayoutRes;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatDelegate;
+import androidx.appcompat.view.ContextThemeWrapper;
+import androidx.core.os.ConfigurationCompat;
+import androidx.core.view.LayoutInflaterCompat;
+
+import com.nuist.setu.killbill.R;
+
+import java.io.PrintWriter;
+import java.util.ArrayDeque;
+import java.util.Locale;
+
+/**
+ * Inflates bill rows ahead of time on a background looper, started from the main thread's
+ * first idle moment, and hands the ready views out through {@link #obtain}.
+ *
+ * Only layouts made of plain views belong in {@link #LAYOUTS}. Widgets that create a
+ * Handler or GestureDetector while being constructed (Spinner's popup, charts, anything
+ * with a ListPopupWindow) bind it to the inflating thread and later fail with
+ * CalledFromWrongThreadException; the same restriction as AsyncLayoutInflater. That rules
+ * out the bill editor and the Stats tab, which are inflated normally.
+ *
+ * Views are inflated with the app theme into a {@link MutableContextWrapper} whose base is
+ * switched to the requesting activity when handed out, and go through AppCompat's view
+ * inflater so they are the same widget classes an activity would have created. Warm views
+ * are dropped if night mode, density, font scale or locale changed since they were built.
+ *
+ * Counters per layout (warm hits vs. misses, main-thread inflate time on a miss,
+ * background inflate time) are in {@link #dump}, printed with MainActivity in front by:
+ * adb shell dumpsys activity top
+ *
+ * Main thread only, except where noted.
+ */
+public final class LayoutWarmer {
+
+    private static final int[] LAYOUTS = {
+            R.layout.item_bill,
+    };
+    // How many warm views to keep per layout, same order as LAYOUTS
+    private static final int[] TARGETS = {8};
+
+    private static final class Warm {
+        final View view;
+        final MutableContextWrapper context;
+        final Configuration config;
+
+        Warm(View view, MutableContextWrapper context, Configuration config) {
+            this.view = view;
+            this.context = context;
+            this.config = config;
+        }
+    }
+
+    private static final class Counters {
+        int hits;
+        int misses;
+        long missNanos;
+        int warmed;
+        long warmNanos;
+    }
+
+    private static LayoutWarmer INSTANCE;
+
+    private final Context appContext;
+    private final AppCompatDelegate delegate;
+    private final Handler worker;
+    private final Handler main = new Handler(Looper.getMainLooper());
+
+    private final SparseArray<ArrayDeque<Warm>> ready = new SparseArray<>();
+    private final SparseArray<Counters> counters = new SparseArray<>();
+    private final int[] inFlight = new int[LAYOUTS.length];
+    private final boolean[] failed = new boolean[LAYOUTS.length];
+    private boolean started;
+    private boolean refillScheduled;
+
+    private LayoutWarmer(Context appContext) {
+        this.appContext = appContext;
+        // Only used for createView, which needs no window
+        this.delegate = AppCompatDelegate.create(appContext, null, null);
+
+        HandlerThread thread = new HandlerThread("layout-warmer", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        this.worker = new Handler(thread.getLooper());
+
+        for (int layout : LAYOUTS) {
+            ready.put(layout, new ArrayDeque<>());
+            counters.put(layout, new Counters());
+        }
+    }
+
+    public static LayoutWarmer getInstance(Context context) {
+        if (INSTANCE == null) {
+            INSTANCE = new LayoutWarmer(context.getApplicationContext());
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Starts warming once the main thread is idle; later calls do nothing.
+     */
+    public void warmUpWhenIdle() {
+        if (started) return;
+        started = true;
+        scheduleRefill();
+    }
+
+    /**
+     * A warm view of {@code layout} for {@code context}'s screen, or a freshly inflated one.
+     * Either way the view is not attached to {@code parent}.
+     */
+    @NonNull
+    public View obtain(@LayoutRes int layout, @NonNull LayoutInflater inflater, @Nullable ViewGroup parent) {
+        Context context = parent != null ? parent.getContext() : inflater.getContext();
+        Counters c = counters.get(layout);
+        ArrayDeque<Warm> queue = ready.get(layout);
+        Warm warm = queue != null ? queue.poll() : null;
+
+        if (warm != null && sameResources(warm.config, context.getResources().getConfiguration())) {
+            warm.context.setBaseContext(context);
+            c.hits++;
+            scheduleRefill();
+            return warm.view;
+        }
+        if (warm != null) {
+            dropAll();
+        }
+
+        long start = SystemClock.elapsedRealtimeNanos();
+        View view = inflater.inflate(layout, parent, false);
+        if (c != null) {
+            c.misses++;
+            c.missNanos += SystemClock.elapsedRealtimeNanos() - start;
+            if (started) scheduleRefill();
+        }
+        return view;
+    }
+
+    public void dump(@NonNull PrintWriter pw) {
+        for (int layout : LAYOUTS) {
+            Counters c = counters.get(layout);
+            pw.printf(Locale.US, "  %-24s ready=%d hits=%d misses=%d missAvg=%.2fms warmed=%d warmAvg=%.2fms%n",
+                    appContext.getResources().getResourceEntryName(layout),
+                    ready.get(layout).size(), c.hits, c.misses,
+                    c.misses == 0 ? 0 : c.missNanos / 1e6 / c.misses,
+                    c.warmed,
+                    c.warmed == 0 ? 0 : c.warmNanos / 1e6 / c.warmed);
+        }
+    }
+
+    private void scheduleRefill() {
+        if (refillScheduled) return;
+        refillScheduled = true;
+        Looper.myQueue().addIdleHandler(() -> {
+            refillScheduled = false;
+            refill();
+            return false;
+        });
+    }
+
+    private void refill() {
+        for (int i = 0; i < LAYOUTS.length; i++) {
+            int layout = LAYOUTS[i];
+            int index = i;
+            if (failed[i]) continue;
+            int missing = TARGETS[i] - ready.get(layout).size() - inFlight[i];
+            for (int k = 0; k < missing; k++) {
+                inFlight[i]++;
+                worker.post(() -> {
+                    long start = SystemClock.elapsedRealtimeNanos();
+                    Warm warm = inflateInBackground(layout);
+                    long nanos = SystemClock.elapsedRealtimeNanos() - start;
+                    main.post(() -> onWarmed(index, warm, nanos));
+                });
+            }
+        }
+    }
+
+    private void onWarmed(int index, @Nullable Warm warm, long nanos) {
+        inFlight[index]--;
+        if (warm == null) {
+            failed[index] = true;
+            return;
+        }
+        if (!sameResources(warm.config, appContext.getResources().getConfiguration())) return;
+
+        int layout = LAYOUTS[index];
+        ready.get(layout).add(warm);
+        Counters c = counters.get(layout);
+        c.warmed++;
+        c.warmNanos += nanos;
+    }
+
+    /**
+     * Worker thread.
+     */
+    @Nullable
+    private Warm inflateInBackground(@LayoutRes int layout) {
+        Configuration config = new Configuration(appContext.getResources().getConfiguration());
+        MutableContextWrapper context = new MutableContextWrapper(
+                new ContextThemeWrapper(appContext, R.style.Theme_KillBill));
+        LayoutInflater inflater = LayoutInflater.from(appContext).cloneInContext(context);
+        LayoutInflaterCompat.setFactory2(inflater, new LayoutInflater.Factory2() {
+            @Override
+            public View onCreateView(@Nullable View parent, @NonNull String name,
+                                     @NonNull Context ctx, @NonNull AttributeSet attrs) {
+                return delegate.createView(parent, name, ctx, attrs);
+            }
+
+            @Override
+            public View onCreateView(@NonNull String name, @NonNull Context ctx, @NonNull AttributeSet attrs) {
+                return onCreateView(null, name, ctx, attrs);
+            }
+        });
+
+        try {
+            // The throwaway parent only supplies match_parent-capable LayoutParams
+            View view = inflater.inflate(layout, new FrameLayout(context), false);
+            return new Warm(view, context, config);
+        } catch (RuntimeException e) {
+            // A view that can't be built off the main thread: that layout stays cold
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    private void dropAll() {
+        for (int layout : LAYOUTS) {
+            ready.get(layout).clear();
+        }
+    }
+
+    private static boolean sameResources(Configuration a, Configuration b) {
+        return (a.uiMode & Configuration.UI_MODE_NIGHT_MASK) == (b.uiMode & Configuration.UI_MODE_NIGHT_MASK)
+                && a.densityDpi == b.densityDpi
+                && a.fontScale == b.fontScale
+                && ConfigurationCompat.getLocales(a).equals(ConfigurationCompat.getLocales(b));
+    }
+}
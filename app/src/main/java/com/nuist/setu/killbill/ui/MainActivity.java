@@ -12,31 +12,47 @@ import android.provider.Settings;
 import androidx.activity.result.ActivityResultLauncher;
 import androidx.activity.result.contract.ActivityResultContracts;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.appcompat.app.AlertDialog;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.app.ActivityCompat;
 import androidx.core.content.ContextCompat;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
 
 import com.google.android.material.snackbar.Snackbar;
 import com.nuist.setu.killbill.R;
 import com.nuist.setu.killbill.data.BillRepository;
+import com.nuist.setu.killbill.data.ListenerWrites;
 import com.nuist.setu.killbill.databinding.ActivityMainBinding;
+import com.nuist.setu.killbill.ui.adapter.BillViewPool;
 import com.nuist.setu.killbill.ui.fragment.AllBillsFragment;
 import com.nuist.setu.killbill.ui.fragment.DailyFragment;
 import com.nuist.setu.killbill.ui.fragment.StatsFragment;
 import com.nuist.setu.killbill.util.CsvExporter;
 import com.nuist.setu.killbill.util.NotificationAccessUtils;
 
-public class MainActivity extends AppCompatActivity {
+import java.io.FileDescriptor;
+import java.io.PrintWriter;
+
+public class MainActivity extends AppCompatActivity implements BillViewPool.Host {
 
     private ActivityMainBinding binding;
 
-    private final DailyFragment dailyFragment = new DailyFragment();
-    private final StatsFragment statsFragment = new StatsFragment();
-    private final AllBillsFragment allBillsFragment = new AllBillsFragment();
+    // item_bill rows shared by the Daily and All Bills tabs
+    private final BillViewPool billViewPool = new BillViewPool();
+
+    // Tabs are created on first use and then only shown/hidden, see switchTo
+    private static final String TAG_DAILY = "tab_daily";
+    private static final String TAG_STATS = "tab_stats";
+    private static final String TAG_ALL = "tab_all";
 
     private ActivityResultLauncher<String> requestPostNotificationPermission;
 
+    private int reviewCount = 0;
+
     // 防止每次onResume都提醒
     private static final String PREFS = "main_prefs";
     private static final String KEY_NL_PROMPTED = "notification_listener_prompted_once";
@@ -48,6 +64,8 @@ public class MainActivity extends AppCompatActivity {
         binding = ActivityMainBinding.inflate(getLayoutInflater());
         setContentView(binding.getRoot());
         setSupportActionBar(binding.toolbar);
+        FrameStats.track(this, "Main");
+        ListenerWrites.observe(this, this);
 
         // 注册 Android 13+ 通知权限请求
         requestPostNotificationPermission = registerForActivityResult(
@@ -65,25 +83,55 @@ public class MainActivity extends AppCompatActivity {
         binding.bottomNav.setOnItemSelectedListener(item -> {
             int id = item.getItemId();
             if (id == R.id.nav_daily) {
-                switchTo(dailyFragment);
+                switchTo(TAG_DAILY);
                 return true;
             } else if (id == R.id.nav_stats) {
-                switchTo(statsFragment);
+                switchTo(TAG_STATS);
                 return true;
             } else if (id == R.id.nav_all) {
-                switchTo(allBillsFragment);
+                switchTo(TAG_ALL);
                 return true;
             }
             return false;
         });
 
         if (savedInstanceState == null) {
+            // Goes through the listener above, which adds the Daily tab
             binding.bottomNav.setSelectedItemId(R.id.nav_daily);
-            switchTo(dailyFragment);
+        } else {
+            // Tabs were restored as they were; just re-tag the frames
+            for (Fragment f : getSupportFragmentManager().getFragments()) {
+                if (f.getId() == R.id.fragment_container && !f.isHidden() && f.getTag() != null) {
+                    FrameStats.putState(this, "tab", f.getTag().substring("tab_".length()));
+                }
+            }
         }
 
+        // Bill rows get inflated in the background once we're idle
+        LayoutWarmer.getInstance(this).warmUpWhenIdle();
+
         // 首次进入时，检查一次通知监听权限
         maybePromptNotificationAccessOnce();
+
+        // 自动记账待确认数量，显示在菜单里
+        BillRepository.getInstance(this).countBillsNeedingReview().observe(this, count -> {
+            reviewCount = count == null ? 0 : count;
+            invalidateOptionsMenu();
+        });
+    }
+
+    @NonNull
+    @Override
+    public BillViewPool getBillViewPool() {
+        return billViewPool;
+    }
+
+    @Override
+    public void dump(@NonNull String prefix, @Nullable FileDescriptor fd,
+                     @NonNull PrintWriter writer, @Nullable String[] args) {
+        super.dump(prefix, fd, writer, args);
+        writer.println(prefix + "LayoutWarmer:");
+        LayoutWarmer.getInstance(this).dump(writer);
     }
 
     @Override
@@ -91,11 +139,58 @@ public class MainActivity extends AppCompatActivity {
         super.onResume();
     }
 
-    private void switchTo(@NonNull androidx.fragment.app.Fragment fragment) {
-        getSupportFragmentManager()
-                .beginTransaction()
-                .replace(R.id.fragment_container, fragment)
-                .commit();
+    /**
+     * Switches to the Daily tab showing the day containing {@code timestamp}.
+     */
+    public void showDailyFor(long timestamp) {
+        Bundle result = new Bundle();
+        result.putLong(DailyFragment.KEY_DAY_START, timestamp);
+        getSupportFragmentManager().setFragmentResult(DailyFragment.RESULT_SHOW_DAY, result);
+        binding.bottomNav.setSelectedItemId(R.id.nav_daily);
+    }
+
+    /**
+     * Shows the tab, creating it the first time. The other tabs are hidden and capped at
+     * STARTED: they keep their views, scroll position and observers, so switching back is a
+     * visibility change rather than a re-inflate and re-query. Hidden state survives
+     * recreation with the fragments themselves.
+     *
+     * Committed synchronously so the next call finds the tab by tag; with an async commit
+     * two quick calls would each add their own copy.
+     */
+    private void switchTo(@NonNull String tag) {
+        FragmentManager fm = getSupportFragmentManager();
+        FragmentTransaction tx = fm.beginTransaction().setReorderingAllowed(true);
+
+        for (Fragment f : fm.getFragments()) {
+            if (f.getId() != R.id.fragment_container || tag.equals(f.getTag())) continue;
+            if (!f.isHidden()) tx.hide(f);
+            tx.setMaxLifecycle(f, Lifecycle.State.STARTED);
+        }
+
+        Fragment target = fm.findFragmentByTag(tag);
+        if (target == null) {
+            target = createTab(tag);
+            tx.add(R.id.fragment_container, target, tag);
+        } else {
+            tx.show(target);
+        }
+        tx.setMaxLifecycle(target, Lifecycle.State.RESUMED);
+        tx.commitNow();
+
+        FrameStats.putState(this, "tab", tag.substring("tab_".length()));
+    }
+
+    @NonNull
+    private static Fragment createTab(@NonNull String tag) {
+        switch (tag) {
+            case TAG_STATS:
+                return new StatsFragment();
+            case TAG_ALL:
+                return new AllBillsFragment();
+            default:
+                return new DailyFragment();
+        }
     }
 
     /**
@@ -190,14 +285,36 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public boolean onCreateOptionsMenu(android.view.Menu menu) {
         getMenuInflater().inflate(R.menu.menu_main, menu);
+        menu.findItem(R.id.action_frame_stats).setVisible(FrameStats.ENABLED);
         return true;
     }
 
+    @Override
+    public boolean onPrepareOptionsMenu(android.view.Menu menu) {
+        android.view.MenuItem review = menu.findItem(R.id.action_review);
+        if (review != null) {
+            review.setTitle(reviewCount > 0
+                    ? getString(R.string.review_queue_count, reviewCount)
+                    : getString(R.string.review_queue));
+        }
+        return super.onPrepareOptionsMenu(menu);
+    }
+
     @Override
     public boolean onOptionsItemSelected(@NonNull android.view.MenuItem item) {
-        if (item.getItemId() == R.id.action_export) {
+        int id = item.getItemId();
+        if (id == R.id.action_export) {
             exportCsv();
             return true;
+        } else if (id == R.id.action_review) {
+            startActivity(new Intent(this, ReviewQueueActivity.class));
+            return true;
+        } else if (id == R.id.action_settings) {
+            startActivity(new Intent(this, SettingsActivity.class));
+            return true;
+        } else if (id == R.id.action_frame_stats) {
+            startActivity(new Intent(this, FrameStatsActivity.class));
+            return true;
         }
         return super.onOptionsItemSelected(item);
     }
@@ -0,0 +1,101 @@
+package com.nuist.setu.killbill.ui;
+
+import android.content.Intent;
+import android.os.Bundle;
+import android.view.Menu;
+import android.view.MenuItem;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.ItemTouchHelper;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.nuist.setu.killbill.R;
+import com.nuist.setu.killbill.data.Bill;
+import com.nuist.setu.killbill.data.ListenerWrites;
+import com.nuist.setu.killbill.databinding.ActivityReviewQueueBinding;
+import com.nuist.setu.killbill.ui.adapter.BillAdapter;
+import com.nuist.setu.killbill.ui.viewmodel.ReviewQueueViewModel;
+
+import java.util.List;
+
+/**
+ * Bills recorded directly from payment notifications, waiting to be confirmed or edited.
+ */
+public class ReviewQueueActivity extends AppCompatActivity {
+
+    private ActivityReviewQueueBinding binding;
+
+    private ReviewQueueViewModel viewModel;
+    private BillAdapter adapter;
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        binding = ActivityReviewQueueBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+
+        setSupportActionBar(binding.toolbar);
+        binding.toolbar.setNavigationOnClickListener(v -> finish());
+        ListenerWrites.observe(this, this);
+
+        adapter = new BillAdapter(bill -> openEdit(bill.id));
+        binding.recyclerReview.setLayoutManager(new LinearLayoutManager(this));
+        binding.recyclerReview.setAdapter(adapter);
+        attachSwipeToConfirm(binding.recyclerReview);
+
+        viewModel = new ViewModelProvider(this).get(ReviewQueueViewModel.class);
+        viewModel.getPending().observe(this, bills -> {
+            adapter.submitList(bills);
+            boolean empty = bills == null || bills.isEmpty();
+            binding.tvEmpty.setVisibility(empty ? View.VISIBLE : View.GONE);
+        });
+    }
+
+    private void attachSwipeToConfirm(RecyclerView recyclerView) {
+        ItemTouchHelper.SimpleCallback cb = new ItemTouchHelper.SimpleCallback(0,
+                ItemTouchHelper.LEFT | ItemTouchHelper.RIGHT) {
+            @Override
+            public boolean onMove(@NonNull RecyclerView rv, @NonNull RecyclerView.ViewHolder vh,
+                                  @NonNull RecyclerView.ViewHolder target) {
+                return false;
+            }
+
+            @Override
+            public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
+                int pos = viewHolder.getBindingAdapterPosition();
+                List<Bill> currentList = adapter.getCurrentList();
+                if (pos < 0 || pos >= currentList.size()) return;
+
+                viewModel.confirm(currentList.get(pos));
+            }
+        };
+        new ItemTouchHelper(cb).attachToRecyclerView(recyclerView);
+    }
+
+    private void openEdit(long billId) {
+        Intent intent = new Intent(this, AddEditBillActivity.class);
+        intent.putExtra(AddEditBillActivity.EXTRA_BILL_ID, billId);
+        startActivity(intent);
+    }
+
+    @Override
+    public boolean onCreateOptionsMenu(Menu menu) {
+        getMenuInflater().inflate(R.menu.menu_review_queue, menu);
+        return true;
+    }
+
+    @Override
+    public boolean onOptionsItemSelected(@NonNull MenuItem item) {
+        if (item.getItemId() == R.id.action_confirm_all) {
+            viewModel.confirmAll();
+            return true;
+        }
+        return super.onOptionsItemSelected(item);
+    }
+}
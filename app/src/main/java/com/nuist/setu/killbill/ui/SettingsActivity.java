@@ -0,0 +1,53 @@
+package com.nuist.setu.killbill.ui;
+
+import android.os.Bundle;
+
+import androidx.annotation.Nullable;
+import androidx.appcompat.app.AppCompatActivity;
+import androidx.preference.Preference;
+import androidx.preference.PreferenceFragmentCompat;
+
+import com.nuist.setu.killbill.R;
+import com.nuist.setu.killbill.databinding.ActivitySettingsBinding;
+import com.nuist.setu.killbill.util.CapturePreferences;
+
+/**
+ * App settings (auto-capture behaviour).
+ */
+public class SettingsActivity extends AppCompatActivity {
+
+    @Override
+    protected void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+
+        ActivitySettingsBinding binding = ActivitySettingsBinding.inflate(getLayoutInflater());
+        setContentView(binding.getRoot());
+        binding.toolbar.setNavigationOnClickListener(v -> finish());
+
+        if (savedInstanceState == null) {
+            getSupportFragmentManager()
+                    .beginTransaction()
+                    .replace(R.id.settings_container, new SettingsFragment())
+                    .commit();
+        }
+    }
+
+    public static class SettingsFragment extends PreferenceFragmentCompat {
+        @Override
+        public void onCreatePreferences(@Nullable Bundle savedInstanceState, @Nullable String rootKey) {
+            setPreferencesFromResource(R.xml.preferences, rootKey);
+            forwardToListener(CapturePreferences.KEY_DIRECT_RECORD);
+            forwardToListener(CapturePreferences.KEY_RECORD_CORPUS);
+        }
+
+        // The listener process can't see this process's SharedPreferences changes
+        private void forwardToListener(String key) {
+            Preference preference = findPreference(key);
+            if (preference == null) return;
+            preference.setOnPreferenceChangeListener((p, value) -> {
+                CapturePreferences.publish(requireContext(), key, Boolean.TRUE.equals(value));
+                return true;
+            });
+        }
+    }
+}
@@ -1,20 +1,21 @@
 package com.nuist.setu.killbill.ui.adapter;
 
 import android.text.TextUtils;
-import android.view.LayoutInflater;
+import android.util.LongSparseArray;
 import android.view.ViewGroup;
 
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ListAdapter;
-import androidx.recyclerview.widget.RecyclerView;
 
 import com.nuist.setu.killbill.data.Bill;
-import com.nuist.setu.killbill.databinding.ItemBillBinding;
-import com.nuist.setu.killbill.util.DateTimeUtils;
-import com.nuist.setu.killbill.util.MoneyUtils;
+import com.nuist.setu.killbill.util.BillRowText;
 
-public class BillAdapter extends ListAdapter<Bill, BillAdapter.VH> {
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class BillAdapter extends ListAdapter<Bill, BillViewHolder> {
 
     public interface OnBillClickListener {
         void onClick(@NonNull Bill bill);
@@ -22,53 +23,56 @@ public class BillAdapter extends ListAdapter<Bill, BillAdapter.VH> {
 
     private final OnBillClickListener listener;
 
+    // Row strings by bill id, formatted on first bind and kept across list updates while
+    // the bill's amount and time are unchanged
+    private final LongSparseArray<BillRowText> texts = new LongSparseArray<>();
+
     public BillAdapter(@NonNull OnBillClickListener listener) {
         super(DIFF);
         this.listener = listener;
+        // Keyed on Bill.id: a bill keeps its holder even when the whole list is replaced
+        setHasStableIds(true);
     }
 
-    @NonNull
     @Override
-    public VH onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        ItemBillBinding binding = ItemBillBinding.inflate(
-                LayoutInflater.from(parent.getContext()),
-                parent,
-                false
-        );
-        return new VH(binding);
+    public long getItemId(int position) {
+        return getItem(position).id;
     }
 
     @Override
-    public void onBindViewHolder(@NonNull VH holder, int position) {
-        Bill bill = getItem(position);
+    public int getItemViewType(int position) {
+        return BillViewHolder.VIEW_TYPE;
+    }
 
-        holder.binding.tvCategory.setText(bill.category);
-        holder.binding.tvAmount.setText(MoneyUtils.formatCny(bill.amount));
+    @NonNull
+    @Override
+    public BillViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        return BillViewHolder.create(parent);
+    }
 
-        String note = bill.note;
-        if (TextUtils.isEmpty(note)) {
-            note = bill.source != null ? bill.source : "";
+    @Override
+    public void onBindViewHolder(@NonNull BillViewHolder holder, int position) {
+        Bill bill = getItem(position);
+        BillRowText text = texts.get(bill.id);
+        if (text == null || !text.isCurrentFor(bill)) {
+            text = BillRowText.of(bill);
+            texts.put(bill.id, text);
         }
-        holder.binding.tvNote.setText(note);
-
-        holder.binding.tvTime.setText(DateTimeUtils.formatTime(bill.timestamp));
-
-        boolean hasReceipt = !TextUtils.isEmpty(bill.receiptUri);
-        holder.binding.ivReceipt.setVisibility(hasReceipt ? android.view.View.VISIBLE : android.view.View.GONE);
-
-        holder.binding.getRoot().setOnClickListener(v -> listener.onClick(bill));
+        holder.bind(bill, text, listener);
     }
 
-    static class VH extends RecyclerView.ViewHolder {
-        final ItemBillBinding binding;
-
-        VH(ItemBillBinding binding) {
-            super(binding.getRoot());
-            this.binding = binding;
+    @Override
+    public void onCurrentListChanged(@NonNull List<Bill> previousList, @NonNull List<Bill> currentList) {
+        if (texts.size() == 0) return;
+        // Forget bills that left the list
+        Set<Long> ids = new HashSet<>(currentList.size() * 2);
+        for (Bill bill : currentList) ids.add(bill.id);
+        for (int i = texts.size() - 1; i >= 0; i--) {
+            if (!ids.contains(texts.keyAt(i))) texts.removeAt(i);
         }
     }
 
-    private static final DiffUtil.ItemCallback<Bill> DIFF = new DiffUtil.ItemCallback<Bill>() {
+    static final DiffUtil.ItemCallback<Bill> DIFF = new DiffUtil.ItemCallback<Bill>() {
         @Override
         public boolean areItemsTheSame(@NonNull Bill oldItem, @NonNull Bill newItem) {
             return oldItem.id == newItem.id;
@@ -82,7 +86,8 @@ public class BillAdapter extends ListAdapter<Bill, BillAdapter.VH> {
                     && oldItem.timestamp == newItem.timestamp
                     && TextUtils.equals(oldItem.receiptUri, newItem.receiptUri)
                     && TextUtils.equals(oldItem.source, newItem.source)
-                    && TextUtils.equals(oldItem.paymentApp, newItem.paymentApp);
+                    && TextUtils.equals(oldItem.paymentApp, newItem.paymentApp)
+                    && oldItem.needsReview == newItem.needsReview;
         }
     };
 }
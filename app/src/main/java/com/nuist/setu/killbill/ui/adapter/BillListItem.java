@@ -0,0 +1,49 @@
+package com.nuist.setu.killbill.ui.adapter;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.nuist.setu.killbill.data.Bill;
+import com.nuist.setu.killbill.util.BillRowText;
+
+/**
+ * A row of {@link SectionedBillAdapter}: either a day header or a bill.
+ * Header and row strings are formatted where the list is built (off the main thread).
+ */
+public final class BillListItem {
+
+    public static final int TYPE_HEADER = 0;
+    public static final int TYPE_BILL = 1;
+
+    public final int type;
+
+    @Nullable
+    public final Bill bill;
+    @Nullable
+    public final BillRowText text;
+
+    // Header only
+    public final long dayStart;
+    @Nullable
+    public final String title;
+    @Nullable
+    public final String totalText;
+
+    private BillListItem(int type, @Nullable Bill bill, @Nullable BillRowText text, long dayStart,
+                         @Nullable String title, @Nullable String totalText) {
+        this.type = type;
+        this.bill = bill;
+        this.text = text;
+        this.dayStart = dayStart;
+        this.title = title;
+        this.totalText = totalText;
+    }
+
+    public static BillListItem header(long dayStart, @NonNull String title, @Nullable String totalText) {
+        return new BillListItem(TYPE_HEADER, null, null, dayStart, title, totalText);
+    }
+
+    public static BillListItem bill(@NonNull Bill bill, @NonNull BillRowText text) {
+        return new BillListItem(TYPE_BILL, bill, text, 0, null, null);
+    }
+}
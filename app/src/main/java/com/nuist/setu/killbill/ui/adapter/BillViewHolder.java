@@ -0,0 +1,79 @@
+package com.nuist.setu.killbill.ui.adapter;
+
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.nuist.setu.killbill.R;
+import com.nuist.setu.killbill.data.Bill;
+import com.nuist.setu.killbill.databinding.ItemBillBinding;
+import com.nuist.setu.killbill.ui.LayoutWarmer;
+import com.nuist.setu.killbill.util.BillRowText;
+import com.nuist.setu.killbill.util.ReceiptThumbnails;
+
+/**
+ * Holder for an item_bill row, shared by every list that shows bills.
+ *
+ * Holders move between adapters through {@link BillViewPool}, so nothing here may capture
+ * the adapter that created it: the click goes to whatever bill and listener were bound last.
+ */
+public class BillViewHolder extends RecyclerView.ViewHolder {
+
+    /** Same view type in every adapter, so pooled holders are interchangeable. */
+    public static final int VIEW_TYPE = R.layout.item_bill;
+
+    final ItemBillBinding binding;
+
+    private Bill bill;
+    private BillAdapter.OnBillClickListener listener;
+
+    BillViewHolder(ItemBillBinding binding) {
+        super(binding.getRoot());
+        this.binding = binding;
+        // One listener per holder, not one per bind
+        binding.getRoot().setOnClickListener(v -> {
+            if (bill != null && listener != null) listener.onClick(bill);
+        });
+    }
+
+    static BillViewHolder create(@NonNull ViewGroup parent) {
+        View view = LayoutWarmer.getInstance(parent.getContext())
+                .obtain(R.layout.item_bill, LayoutInflater.from(parent.getContext()), parent);
+        return new BillViewHolder(ItemBillBinding.bind(view));
+    }
+
+    /**
+     * @param text row strings formatted where the list was built, or null to format them here
+     */
+    void bind(@NonNull Bill bill, @Nullable BillRowText text,
+              @NonNull BillAdapter.OnBillClickListener listener) {
+        this.bill = bill;
+        this.listener = listener;
+        if (text == null || !text.isCurrent()) text = BillRowText.of(bill);
+
+        binding.tvCategory.setText(bill.category);
+        binding.tvAmount.setText(text.amount);
+
+        String note = bill.note;
+        if (TextUtils.isEmpty(note)) {
+            note = bill.source != null ? bill.source : "";
+        }
+        binding.tvNote.setText(note);
+
+        binding.tvTime.setText(text.time);
+
+        ReceiptThumbnails thumbnails = ReceiptThumbnails.getInstance(itemView.getContext());
+        if (TextUtils.isEmpty(bill.receiptUri)) {
+            thumbnails.clear(binding.ivReceipt);
+            binding.ivReceipt.setVisibility(View.GONE);
+        } else {
+            binding.ivReceipt.setVisibility(View.VISIBLE);
+            thumbnails.loadThumbnail(binding.ivReceipt, bill.receiptUri);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.nuist.setu.killbill.ui.adapter;
+
+import android.app.Activity;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * One RecycledViewPool per activity for every bill list in it, so item_bill rows inflated
+ * for one tab are reused by the next instead of being inflated again.
+ *
+ * {@link #prewarm} fills the pool during main-thread idle time, one holder per idle pass,
+ * so the first screen and the first fling of a list come mostly from the pool.
+ */
+public class BillViewPool extends RecyclerView.RecycledViewPool {
+
+    /**
+     * Implemented by activities that host bill lists.
+     */
+    public interface Host {
+        @NonNull
+        BillViewPool getBillViewPool();
+    }
+
+    // A screenful plus what a fling pulls in before recycling catches up
+    private static final int PREWARM_COUNT = 12;
+    private static final int MAX_BILL_VIEWS = 24;
+
+    private boolean prewarmStarted;
+
+    public BillViewPool() {
+        setMaxRecycledViews(BillViewHolder.VIEW_TYPE, MAX_BILL_VIEWS);
+    }
+
+    /**
+     * @return the pool of the hosting activity, or null if it doesn't provide one
+     */
+    @Nullable
+    public static BillViewPool from(@Nullable Activity activity) {
+        return activity instanceof Host ? ((Host) activity).getBillViewPool() : null;
+    }
+
+    /**
+     * Uses the activity's pool for the list (if any) and hands rows back to it when the list
+     * goes away, e.g. on a tab switch.
+     */
+    public static void attach(@NonNull RecyclerView list, @Nullable Activity activity) {
+        BillViewPool pool = from(activity);
+        if (pool == null) return;
+        list.setRecycledViewPool(pool);
+        if (list.getLayoutManager() instanceof LinearLayoutManager) {
+            ((LinearLayoutManager) list.getLayoutManager()).setRecycleChildrenOnDetach(true);
+        }
+        pool.prewarm(list);
+    }
+
+    /**
+     * Creates item_bill holders through the list's adapter (so they carry the right view
+     * type) while the main thread is idle. Only the first call does anything.
+     */
+    private void prewarm(@NonNull RecyclerView list) {
+        if (prewarmStarted || list.getAdapter() == null) return;
+        prewarmStarted = true;
+
+        Looper.myQueue().addIdleHandler(new MessageQueue.IdleHandler() {
+            @Override
+            public boolean queueIdle() {
+                RecyclerView.Adapter<?> adapter = list.getAdapter();
+                if (adapter == null) return false;
+                if (getRecycledViewCount(BillViewHolder.VIEW_TYPE) >= PREWARM_COUNT) return false;
+
+                putRecycledView(adapter.createViewHolder(list, BillViewHolder.VIEW_TYPE));
+                return true;
+            }
+        });
+    }
+}
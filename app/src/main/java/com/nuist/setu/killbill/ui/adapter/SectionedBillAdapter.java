@@ -0,0 +1,124 @@
+package com.nuist.setu.killbill.ui.adapter;
+
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+
+import com.nuist.setu.killbill.R;
+import com.nuist.setu.killbill.databinding.ItemBillHeaderBinding;
+
+/**
+ * Bills grouped under day headers (see {@link BillListItem}); headers can be pinned with
+ * {@link StickyHeaderDecoration}.
+ */
+public class SectionedBillAdapter extends ListAdapter<BillListItem, RecyclerView.ViewHolder>
+        implements StickyHeaderDecoration.HeaderSource {
+
+    private final BillAdapter.OnBillClickListener listener;
+
+    public SectionedBillAdapter(@NonNull BillAdapter.OnBillClickListener listener) {
+        super(DIFF);
+        this.listener = listener;
+        setHasStableIds(true);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        BillListItem item = getItem(position);
+        // Bill IDs are positive; headers get negative IDs (day starts are after 1970)
+        return item.type == BillListItem.TYPE_HEADER ? -2 - item.dayStart : item.bill.id;
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return getItem(position).type == BillListItem.TYPE_HEADER
+                ? HeaderViewHolder.VIEW_TYPE : BillViewHolder.VIEW_TYPE;
+    }
+
+    @NonNull
+    @Override
+    public RecyclerView.ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (viewType == HeaderViewHolder.VIEW_TYPE) {
+            return new HeaderViewHolder(ItemBillHeaderBinding.inflate(
+                    LayoutInflater.from(parent.getContext()), parent, false));
+        }
+        return BillViewHolder.create(parent);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        BillListItem item = getItem(position);
+        if (holder instanceof HeaderViewHolder) {
+            bindHeader(((HeaderViewHolder) holder).binding, item);
+        } else {
+            ((BillViewHolder) holder).bind(item.bill, item.text, listener);
+        }
+    }
+
+    private static void bindHeader(ItemBillHeaderBinding binding, BillListItem header) {
+        binding.tvDay.setText(header.title);
+        binding.tvDayTotal.setText(header.totalText);
+    }
+
+    @Override
+    public boolean isHeader(int position) {
+        return getItem(position).type == BillListItem.TYPE_HEADER;
+    }
+
+    @Override
+    public int headerPositionFor(int position) {
+        for (int i = position; i >= 0; i--) {
+            if (isHeader(i)) return i;
+        }
+        return RecyclerView.NO_POSITION;
+    }
+
+    @NonNull
+    @Override
+    public View createHeaderView(@NonNull RecyclerView parent) {
+        ItemBillHeaderBinding binding = ItemBillHeaderBinding.inflate(
+                LayoutInflater.from(parent.getContext()), parent, false);
+        binding.getRoot().setTag(binding);
+        return binding.getRoot();
+    }
+
+    @Override
+    public void bindHeaderView(@NonNull View header, int headerPosition) {
+        bindHeader((ItemBillHeaderBinding) header.getTag(), getItem(headerPosition));
+    }
+
+    static class HeaderViewHolder extends RecyclerView.ViewHolder {
+        static final int VIEW_TYPE = R.layout.item_bill_header;
+
+        final ItemBillHeaderBinding binding;
+
+        HeaderViewHolder(ItemBillHeaderBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
+    }
+
+    private static final DiffUtil.ItemCallback<BillListItem> DIFF = new DiffUtil.ItemCallback<BillListItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull BillListItem oldItem, @NonNull BillListItem newItem) {
+            if (oldItem.type != newItem.type) return false;
+            if (oldItem.type == BillListItem.TYPE_HEADER) return oldItem.dayStart == newItem.dayStart;
+            return BillAdapter.DIFF.areItemsTheSame(oldItem.bill, newItem.bill);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull BillListItem oldItem, @NonNull BillListItem newItem) {
+            if (oldItem.type == BillListItem.TYPE_HEADER) {
+                return TextUtils.equals(oldItem.title, newItem.title)
+                        && TextUtils.equals(oldItem.totalText, newItem.totalText);
+            }
+            return BillAdapter.DIFF.areContentsTheSame(oldItem.bill, newItem.bill);
+        }
+    };
+}
@@ -0,0 +1,100 @@
+package com.nuist.setu.killbill.ui.adapter;
+
+import android.graphics.Canvas;
+import android.view.View;
+import android.view.ViewGroup;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+
+/**
+ * Pins the header of the topmost visible section to the top of a vertical RecyclerView.
+ * The next header pushes it up as it arrives. One header view is kept and only re-bound
+ * when the pinned section changes.
+ */
+public class StickyHeaderDecoration extends RecyclerView.ItemDecoration {
+
+    public interface HeaderSource {
+        boolean isHeader(int position);
+
+        /**
+         * @return adapter position of the header above (or at) position, or NO_POSITION
+         */
+        int headerPositionFor(int position);
+
+        @NonNull
+        View createHeaderView(@NonNull RecyclerView parent);
+
+        void bindHeaderView(@NonNull View header, int headerPosition);
+    }
+
+    private final HeaderSource source;
+
+    private View header;
+    private int boundPosition = RecyclerView.NO_POSITION;
+    private int measuredForWidth = -1;
+
+    public StickyHeaderDecoration(@NonNull HeaderSource source) {
+        this.source = source;
+    }
+
+    @Override
+    public void onDrawOver(@NonNull Canvas c, @NonNull RecyclerView parent, @NonNull RecyclerView.State state) {
+        if (parent.getChildCount() == 0) return;
+
+        View top = parent.getChildAt(0);
+        int topPosition = parent.getChildAdapterPosition(top);
+        if (topPosition == RecyclerView.NO_POSITION) return;
+
+        int headerPosition = source.headerPositionFor(topPosition);
+        if (headerPosition == RecyclerView.NO_POSITION) return;
+
+        if (header == null) {
+            header = source.createHeaderView(parent);
+            boundPosition = RecyclerView.NO_POSITION;
+        }
+        if (headerPosition != boundPosition || measuredForWidth != parent.getWidth()) {
+            source.bindHeaderView(header, headerPosition);
+            boundPosition = headerPosition;
+            measure(parent);
+            measuredForWidth = parent.getWidth();
+        }
+
+        // Push the pinned header up while the next one scrolls in underneath
+        int offset = 0;
+        int headerHeight = header.getHeight();
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            View child = parent.getChildAt(i);
+            if (child.getTop() >= headerHeight) break;
+            int pos = parent.getChildAdapterPosition(child);
+            if (pos != RecyclerView.NO_POSITION && pos != headerPosition && child.getTop() > 0
+                    && source.isHeader(pos)) {
+                offset = child.getTop() - headerHeight;
+                break;
+            }
+        }
+
+        c.save();
+        c.translate(parent.getPaddingLeft(), offset);
+        header.draw(c);
+        c.restore();
+    }
+
+    private void measure(RecyclerView parent) {
+        int width = parent.getWidth() - parent.getPaddingLeft() - parent.getPaddingRight();
+        int widthSpec = View.MeasureSpec.makeMeasureSpec(width, View.MeasureSpec.EXACTLY);
+        ViewGroup.LayoutParams lp = header.getLayoutParams();
+        int heightSpec = lp != null && lp.height > 0
+                ? View.MeasureSpec.makeMeasureSpec(lp.height, View.MeasureSpec.EXACTLY)
+                : View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED);
+        header.measure(widthSpec, heightSpec);
+        header.layout(0, 0, header.getMeasuredWidth(), header.getMeasuredHeight());
+    }
+
+    /**
+     * Call when the data changes so the pinned header is re-bound.
+     */
+    public void invalidateHeader() {
+        boundPosition = RecyclerView.NO_POSITION;
+    }
+}
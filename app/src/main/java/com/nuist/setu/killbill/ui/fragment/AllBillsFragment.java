@@ -21,25 +21,30 @@ import com.google.android.material.snackbar.Snackbar;
 import com.nuist.setu.killbill.data.Bill;
 import com.nuist.setu.killbill.databinding.FragmentAllBillsBinding;
 import com.nuist.setu.killbill.ui.AddEditBillActivity;
-import com.nuist.setu.killbill.ui.adapter.BillAdapter;
+import com.nuist.setu.killbill.ui.FrameStats;
+import com.nuist.setu.killbill.ui.adapter.BillListItem;
+import com.nuist.setu.killbill.ui.adapter.BillViewHolder;
+import com.nuist.setu.killbill.ui.adapter.BillViewPool;
+import com.nuist.setu.killbill.ui.adapter.SectionedBillAdapter;
+import com.nuist.setu.killbill.ui.adapter.StickyHeaderDecoration;
 import com.nuist.setu.killbill.ui.viewmodel.AllBillsViewModel;
 
-import java.util.ArrayList;
 import java.util.List;
-import java.util.Locale;
 
 public class AllBillsFragment extends Fragment {
 
     private FragmentAllBillsBinding binding;
 
     private AllBillsViewModel viewModel;
-    private BillAdapter adapter;
-
-    private List<Bill> fullList = new ArrayList<>();
-    private String currentQuery = "";
+    private SectionedBillAdapter adapter;
+    private StickyHeaderDecoration headerDecoration;
 
     private Bill lastDeleted = null;
 
+    // Tags for FrameStats, see updateFrameState
+    private int visibleItemCount;
+    private boolean searchActive;
+
     public AllBillsFragment() {}
 
     @Override
@@ -53,31 +58,36 @@ public class AllBillsFragment extends Fragment {
     public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
         super.onViewCreated(view, savedInstanceState);
 
-        adapter = new BillAdapter(bill -> openEdit(bill.id));
+        adapter = new SectionedBillAdapter(bill -> openEdit(bill.id));
+        headerDecoration = new StickyHeaderDecoration(adapter);
         binding.recyclerAllBills.setLayoutManager(new LinearLayoutManager(requireContext()));
         binding.recyclerAllBills.setAdapter(adapter);
+        binding.recyclerAllBills.addItemDecoration(headerDecoration);
+        BillViewPool.attach(binding.recyclerAllBills, requireActivity());
 
         attachSwipeToDelete(binding.recyclerAllBills);
 
         viewModel = new ViewModelProvider(this).get(AllBillsViewModel.class);
 
-        viewModel.getAllBills().observe(getViewLifecycleOwner(), bills -> {
-            fullList = bills == null ? new ArrayList<>() : bills;
-            applyFilter(currentQuery);
+        // Filtering happens in the ViewModel, off the main thread
+        viewModel.getVisibleItems().observe(getViewLifecycleOwner(), items -> {
+            adapter.submitList(items, headerDecoration::invalidateHeader);
+            visibleItemCount = items == null ? 0 : items.size();
+            updateFrameState();
         });
 
         binding.searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
             @Override
             public boolean onQueryTextSubmit(String query) {
-                currentQuery = query == null ? "" : query;
-                applyFilter(currentQuery);
+                viewModel.setQuery(query, true);
+                setSearchActive(query);
                 return true;
             }
 
             @Override
             public boolean onQueryTextChange(String newText) {
-                currentQuery = newText == null ? "" : newText;
-                applyFilter(currentQuery);
+                viewModel.setQuery(newText, false);
+                setSearchActive(newText);
                 return true;
             }
         });
@@ -85,6 +95,31 @@ public class AllBillsFragment extends Fragment {
         binding.fabAdd.setOnClickListener(v -> openAdd());
     }
 
+    @Override
+    public void onResume() {
+        super.onResume();
+        updateFrameState();
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        // Hidden tabs are paused; their tags must not leak onto the visible tab's frames
+        FrameStats.putState(requireActivity(), "items", null);
+        FrameStats.putState(requireActivity(), "search", null);
+    }
+
+    private void setSearchActive(String query) {
+        searchActive = !TextUtils.isEmpty(query);
+        updateFrameState();
+    }
+
+    private void updateFrameState() {
+        if (!isResumed()) return;
+        FrameStats.putState(requireActivity(), "items", FrameStats.sizeBucket(visibleItemCount));
+        FrameStats.putState(requireActivity(), "search", searchActive ? "on" : "off");
+    }
+
     private void attachSwipeToDelete(RecyclerView recyclerView) {
         ItemTouchHelper.SimpleCallback cb = new ItemTouchHelper.SimpleCallback(0,
                 ItemTouchHelper.LEFT | ItemTouchHelper.RIGHT) {
@@ -94,13 +129,20 @@ public class AllBillsFragment extends Fragment {
                 return false;
             }
 
+            @Override
+            public int getSwipeDirs(@NonNull RecyclerView rv, @NonNull RecyclerView.ViewHolder vh) {
+                // Day headers can't be deleted
+                return vh instanceof BillViewHolder ? super.getSwipeDirs(rv, vh) : 0;
+            }
+
             @Override
             public void onSwiped(@NonNull RecyclerView.ViewHolder viewHolder, int direction) {
                 int pos = viewHolder.getBindingAdapterPosition();
-                List<Bill> currentList = adapter.getCurrentList();
+                List<BillListItem> currentList = adapter.getCurrentList();
                 if (pos < 0 || pos >= currentList.size()) return;
 
-                Bill bill = currentList.get(pos);
+                Bill bill = currentList.get(pos).bill;
+                if (bill == null) return;
                 lastDeleted = bill;
                 viewModel.delete(bill);
 
@@ -117,27 +159,6 @@ public class AllBillsFragment extends Fragment {
         new ItemTouchHelper(cb).attachToRecyclerView(recyclerView);
     }
 
-    private void applyFilter(String query) {
-        if (TextUtils.isEmpty(query)) {
-            adapter.submitList(new ArrayList<>(fullList));
-            return;
-        }
-
-        String q = query.toLowerCase(Locale.ROOT).trim();
-        List<Bill> filtered = new ArrayList<>();
-        for (Bill b : fullList) {
-            String note = b.note == null ? "" : b.note;
-            String cat = b.category == null ? "" : b.category;
-            String src = b.source == null ? "" : b.source;
-            if (note.toLowerCase(Locale.ROOT).contains(q)
-                    || cat.toLowerCase(Locale.ROOT).contains(q)
-                    || src.toLowerCase(Locale.ROOT).contains(q)) {
-                filtered.add(b);
-            }
-        }
-        adapter.submitList(filtered);
-    }
-
     private void openAdd() {
         Intent intent = new Intent(requireContext(), AddEditBillActivity.class);
         startActivity(intent);
@@ -17,10 +17,15 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.google.android.material.snackbar.Snackbar;
+import com.nuist.setu.killbill.R;
 import com.nuist.setu.killbill.data.Bill;
+import com.nuist.setu.killbill.data.CategoryStats;
+import com.nuist.setu.killbill.data.CategoryTotal;
+import com.nuist.setu.killbill.data.DaySnapshot;
 import com.nuist.setu.killbill.databinding.FragmentDailyBinding;
 import com.nuist.setu.killbill.ui.AddEditBillActivity;
 import com.nuist.setu.killbill.ui.adapter.BillAdapter;
+import com.nuist.setu.killbill.ui.adapter.BillViewPool;
 import com.nuist.setu.killbill.ui.viewmodel.DailyViewModel;
 import com.nuist.setu.killbill.util.DateTimeUtils;
 import com.nuist.setu.killbill.util.MoneyUtils;
@@ -30,8 +35,15 @@ import java.util.List;
 
 public class DailyFragment extends Fragment {
 
+    // Fragment result asking this tab to show another day, see MainActivity#showDailyFor
+    public static final String RESULT_SHOW_DAY = "daily_show_day";
+    public static final String KEY_DAY_START = "day_start";
+
     private FragmentDailyBinding binding;
 
+    // Categories listed in the summary line, largest first
+    private static final int SUMMARY_CATEGORIES = 3;
+
     private DailyViewModel viewModel;
     private BillAdapter adapter;
 
@@ -39,6 +51,14 @@ public class DailyFragment extends Fragment {
 
     public DailyFragment() {}
 
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        getParentFragmentManager().setFragmentResultListener(RESULT_SHOW_DAY, this, (key, result) ->
+                new ViewModelProvider(this).get(DailyViewModel.class)
+                        .setSelectedDate(result.getLong(KEY_DAY_START)));
+    }
+
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container,
                              Bundle savedInstanceState) {
@@ -54,6 +74,7 @@ public class DailyFragment extends Fragment {
 
         binding.recyclerBills.setLayoutManager(new LinearLayoutManager(requireContext()));
         binding.recyclerBills.setAdapter(adapter);
+        BillViewPool.attach(binding.recyclerBills, requireActivity());
 
         attachSwipeToDelete(binding.recyclerBills);
 
@@ -63,13 +84,9 @@ public class DailyFragment extends Fragment {
             binding.tvDate.setText(DateTimeUtils.formatDate(dayStart));
         });
 
-        viewModel.getBills().observe(getViewLifecycleOwner(), bills -> {
-            adapter.submitList(bills);
-        });
+        viewModel.getSnapshot().observe(getViewLifecycleOwner(), this::showSnapshot);
 
-        viewModel.getTotalAmount().observe(getViewLifecycleOwner(), total -> {
-            binding.tvTotal.setText(MoneyUtils.formatCny(total));
-        });
+        viewModel.getAnomalies().observe(getViewLifecycleOwner(), this::showAnomalies);
 
         binding.tvDate.setOnClickListener(v -> pickDate());
         binding.fabAdd.setOnClickListener(v -> openAdd());
@@ -107,6 +124,47 @@ public class DailyFragment extends Fragment {
         new ItemTouchHelper(cb).attachToRecyclerView(recyclerView);
     }
 
+    private void showSnapshot(DaySnapshot snapshot) {
+        adapter.submitList(snapshot.bills);
+        binding.tvTotal.setText(MoneyUtils.formatCny(snapshot.total));
+
+        if (snapshot.count == 0) {
+            binding.tvSummary.setVisibility(View.GONE);
+            return;
+        }
+        // A handful of categories at most; the rows themselves are never walked here
+        StringBuilder sb = new StringBuilder(getResources()
+                .getQuantityString(R.plurals.daily_bill_count, snapshot.count, snapshot.count));
+        int shown = Math.min(SUMMARY_CATEGORIES, snapshot.categories.size());
+        for (int i = 0; i < shown; i++) {
+            CategoryTotal ct = snapshot.categories.get(i);
+            sb.append(" · ").append(ct.category).append(' ').append(MoneyUtils.formatCny(ct.total));
+        }
+        binding.tvSummary.setText(sb);
+        binding.tvSummary.setVisibility(View.VISIBLE);
+    }
+
+    private void showAnomalies(List<CategoryStats> anomalies) {
+        if (anomalies == null || anomalies.isEmpty()) {
+            binding.tvAnomaly.setVisibility(View.GONE);
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        for (CategoryStats s : anomalies) {
+            if (sb.length() > 0) sb.append('\n');
+            int res = CategoryStats.PERIOD_DAY.equals(s.period)
+                    ? R.string.anomaly_day
+                    : R.string.anomaly_week;
+            sb.append(getString(res,
+                    s.category,
+                    MoneyUtils.formatCny(s.bucketTotal),
+                    MoneyUtils.formatCny(s.mean)));
+        }
+        binding.tvAnomaly.setText(sb);
+        binding.tvAnomaly.setVisibility(View.VISIBLE);
+    }
+
     private void pickDate() {
         Calendar c = Calendar.getInstance();
         c.setTimeInMillis(viewModel.getSelectedDayStart().getValue() == null
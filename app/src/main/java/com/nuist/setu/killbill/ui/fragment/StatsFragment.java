@@ -18,12 +18,12 @@ import com.github.mikephil.charting.data.PieDataSet;
 import com.github.mikephil.charting.data.PieEntry;
 import com.github.mikephil.charting.utils.ColorTemplate;
 import com.google.android.material.color.MaterialColors;
-import com.nuist.setu.killbill.data.CategoryTotal;
 import com.nuist.setu.killbill.databinding.FragmentStatsBinding;
+import com.nuist.setu.killbill.ui.FrameStats;
+import com.nuist.setu.killbill.ui.MainActivity;
 import com.nuist.setu.killbill.ui.adapter.CategoryTotalAdapter;
 import com.nuist.setu.killbill.ui.viewmodel.StatsViewModel;
 import com.nuist.setu.killbill.util.DateTimeUtils;
-import com.nuist.setu.killbill.util.MoneyUtils;
 
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -33,9 +33,20 @@ public class StatsFragment extends Fragment {
 
     private FragmentStatsBinding binding;
 
+    private static final int PIE_ANIMATION_MS = 300;
+
     private StatsViewModel viewModel;
     private CategoryTotalAdapter adapter;
 
+    // Reused across updates, recreated with the view
+    private List<PieEntry> pieEntries;
+    private PieDataSet pieDataSet;
+    private PieData pieData;
+
+    private final Runnable clearChartTag = () -> {
+        if (getActivity() != null) FrameStats.putState(getActivity(), "chart", null);
+    };
+
     public StatsFragment() {}
 
     @Override
@@ -61,9 +72,15 @@ public class StatsFragment extends Fragment {
             binding.tvMonth.setText(DateTimeUtils.formatMonth(monthStart));
         });
 
-        viewModel.getCategoryTotals().observe(getViewLifecycleOwner(), list -> {
-            adapter.submitList(list);
-            updatePieChart(list);
+        viewModel.getCategoryTotals().observe(getViewLifecycleOwner(), adapter::submitList);
+        viewModel.getPieModel().observe(getViewLifecycleOwner(), this::updatePieChart);
+        viewModel.getYearHeat().observe(getViewLifecycleOwner(), heat ->
+                binding.heatmap.setData(heat.yearStart, heat.dayTotals));
+
+        binding.heatmap.setOnDayClickListener(dayStart -> {
+            if (requireActivity() instanceof MainActivity) {
+                ((MainActivity) requireActivity()).showDailyFor(dayStart);
+            }
         });
 
         binding.tvMonth.setOnClickListener(v -> pickMonth());
@@ -84,36 +101,60 @@ public class StatsFragment extends Fragment {
                 com.google.android.material.R.attr.colorOnBackground);
         binding.pieChart.getLegend().setTextColor(textColor);
 
+        pieEntries = new ArrayList<>();
+        pieDataSet = new PieDataSet(pieEntries, "");
+        pieDataSet.setColors(ColorTemplate.MATERIAL_COLORS);
+        pieDataSet.setSliceSpace(2f);
+        pieDataSet.setValueTextSize(12f);
+        pieData = new PieData(pieDataSet);
     }
 
-    private void updatePieChart(List<CategoryTotal> list) {
-        if (list == null || list.isEmpty()) {
+    /**
+     * Only called when the model changed. The data set and its entries are reused, so an
+     * update allocates nothing beyond new slices.
+     */
+    private void updatePieChart(StatsViewModel.PieModel model) {
+        if (model.isEmpty()) {
             binding.pieChart.clear();
-            binding.pieChart.setCenterText("No Data");
+            binding.pieChart.setCenterText(model.centerText);
             binding.pieChart.invalidate();
             return;
         }
 
-        double sum = 0;
-        for (CategoryTotal ct : list) {
-            sum += ct.total;
+        for (int i = 0; i < model.labels.length; i++) {
+            if (i < pieEntries.size()) {
+                PieEntry entry = pieEntries.get(i);
+                entry.setY(model.percents[i]);
+                entry.setLabel(model.labels[i]);
+            } else {
+                pieEntries.add(new PieEntry(model.percents[i], model.labels[i]));
+            }
         }
-
-        ArrayList<PieEntry> entries = new ArrayList<>();
-        for (CategoryTotal ct : list) {
-            float percent = (float) (ct.total / sum * 100.0);
-            entries.add(new PieEntry(percent, ct.category));
+        while (pieEntries.size() > model.labels.length) {
+            pieEntries.remove(pieEntries.size() - 1);
         }
+        pieDataSet.notifyDataSetChanged();
+        pieData.notifyDataChanged();
 
-        PieDataSet dataSet = new PieDataSet(entries, "");
-        dataSet.setColors(ColorTemplate.MATERIAL_COLORS);
-        dataSet.setSliceSpace(2f);
-        dataSet.setValueTextSize(12f);
+        // clear() drops the data
+        if (binding.pieChart.getData() != pieData) {
+            binding.pieChart.setData(pieData);
+        }
+        binding.pieChart.notifyDataSetChanged();
+        binding.pieChart.setCenterText(model.centerText);
+        // Redraws too
+        binding.pieChart.animateY(PIE_ANIMATION_MS);
+        tagChartAnimation();
+    }
 
-        PieData data = new PieData(dataSet);
-        binding.pieChart.setData(data);
-        binding.pieChart.setCenterText("Expenses for this month\n" + MoneyUtils.formatCny(sum));
-        binding.pieChart.invalidate();
+    /**
+     * Tags the frames of the pie animation so their timing shows up separately in FrameStats.
+     */
+    private void tagChartAnimation() {
+        if (!FrameStats.ENABLED) return;
+        FrameStats.putState(requireActivity(), "chart", "animating");
+        binding.pieChart.removeCallbacks(clearChartTag);
+        binding.pieChart.postDelayed(clearChartTag, PIE_ANIMATION_MS);
     }
 
     private void pickMonth() {
@@ -146,6 +187,8 @@ public class StatsFragment extends Fragment {
     @Override
     public void onDestroyView() {
         super.onDestroyView();
+        binding.pieChart.removeCallbacks(clearChartTag);
+        clearChartTag.run();
         binding = null;
     }
 }
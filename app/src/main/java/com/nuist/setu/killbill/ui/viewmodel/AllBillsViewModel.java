@@ -1,35 +1,137 @@
 package com.nuist.setu.killbill.ui.viewmodel;
 
 import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.LongSparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 
 import com.nuist.setu.killbill.data.Bill;
 import com.nuist.setu.killbill.data.BillRepository;
+import com.nuist.setu.killbill.data.DayTotal;
+import com.nuist.setu.killbill.ui.adapter.BillListItem;
+import com.nuist.setu.killbill.util.BillRowText;
+import com.nuist.setu.killbill.util.DateTimeUtils;
+import com.nuist.setu.killbill.util.MoneyUtils;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * ViewModel for all bills list.
+ *
+ * Search runs on a background executor: keystrokes are debounced, each search gets a
+ * generation number so stale ones stop early and never publish, and a query that extends
+ * the previous one only narrows the previous result. A bill's lower-cased search key and
+ * row text are built when it first loads or changes, not per keystroke or per reload.
+ *
+ * The result is split into day sections on the same executor. Unfiltered, day totals come
+ * from a grouped query, so headers never require summing the list in Java; while searching,
+ * a header shows the total of the matching rows under it instead.
  */
 public class AllBillsViewModel extends AndroidViewModel {
 
+    private static final long SEARCH_DEBOUNCE_MS = 150;
+    private static final int CANCEL_CHECK_INTERVAL = 256;
+
+    private static final class SearchEntry {
+        final Bill bill;
+        // note, category and source, lower-cased, separated by '\0' so matches can't span fields
+        final String key;
+        // So scrolling never formats on the main thread
+        final BillRowText text;
+
+        SearchEntry(Bill bill) {
+            this.bill = bill;
+            this.text = BillRowText.of(bill);
+            this.key = (nonNull(bill.note) + '\0' + nonNull(bill.category) + '\0' + nonNull(bill.source))
+                    .toLowerCase(Locale.ROOT);
+        }
+
+        private SearchEntry(Bill bill, SearchEntry previous) {
+            this.bill = bill;
+            this.text = previous.text;
+            this.key = previous.key;
+        }
+
+        /**
+         * The entry for a reloaded copy of this bill, reusing key and text when the fields
+         * they come from are unchanged.
+         */
+        SearchEntry reload(Bill fresh) {
+            boolean same = TextUtils.equals(bill.note, fresh.note)
+                    && TextUtils.equals(bill.category, fresh.category)
+                    && TextUtils.equals(bill.source, fresh.source)
+                    && text.isCurrentFor(fresh);
+            return same ? new SearchEntry(fresh, this) : new SearchEntry(fresh);
+        }
+    }
+
     private final BillRepository repository;
 
     private final LiveData<List<Bill>> allBills;
+    private final MediatorLiveData<List<BillListItem>> visibleItems = new MediatorLiveData<>();
+
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger generation = new AtomicInteger();
+    private final Runnable debouncedSearch = () -> search(null, null);
+
+    // Main thread
+    private String query = "";
+
+    // Search executor only
+    private List<SearchEntry> entries = Collections.emptyList();
+    private List<DayTotal> dayTotals = Collections.emptyList();
+    private String lastQuery;
+    private List<SearchEntry> lastResult = Collections.emptyList();
 
     public AllBillsViewModel(@NonNull Application application) {
         super(application);
         repository = BillRepository.getInstance(application);
         allBills = repository.getAllBills();
+        visibleItems.addSource(allBills, bills -> {
+            mainHandler.removeCallbacks(debouncedSearch);
+            search(bills == null ? Collections.emptyList() : bills, null);
+        });
+        visibleItems.addSource(repository.getDayTotals(), totals ->
+                search(null, totals == null ? Collections.emptyList() : totals));
     }
 
     public LiveData<List<Bill>> getAllBills() {
         return allBills;
     }
 
+    /**
+     * All bills matching the current search query, under day headers.
+     */
+    public LiveData<List<BillListItem>> getVisibleItems() {
+        return visibleItems;
+    }
+
+    /**
+     * @param immediate skip the debounce (e.g. on submit)
+     */
+    public void setQuery(String newQuery, boolean immediate) {
+        query = newQuery == null ? "" : newQuery;
+        mainHandler.removeCallbacks(debouncedSearch);
+        if (immediate) {
+            search(null, null);
+        } else {
+            mainHandler.postDelayed(debouncedSearch, SEARCH_DEBOUNCE_MS);
+        }
+    }
+
     public void insert(Bill bill) {
         repository.insert(bill);
     }
@@ -37,4 +139,135 @@ public class AllBillsViewModel extends AndroidViewModel {
     public void delete(Bill bill) {
         repository.delete(bill);
     }
+
+    /**
+     * @param newBills  fresh database contents, or null to search the current ones
+     * @param newTotals fresh day totals, or null to keep the current ones
+     */
+    private void search(List<Bill> newBills, List<DayTotal> newTotals) {
+        int gen = generation.incrementAndGet();
+        String q = query.toLowerCase(Locale.ROOT).trim();
+
+        searchExecutor.execute(() -> {
+            // Never skipped, even if stale: later searches rely on the keys
+            if (newBills != null) {
+                entries = buildEntries(newBills, entries);
+                lastQuery = null;
+            }
+            if (newTotals != null) {
+                dayTotals = newTotals;
+            }
+            if (gen != generation.get()) return;
+
+            List<SearchEntry> result;
+            if (q.isEmpty()) {
+                result = entries;
+            } else {
+                // "ab" matches a subset of what "a" matched
+                List<SearchEntry> base = lastQuery != null && q.startsWith(lastQuery) ? lastResult : entries;
+                result = new ArrayList<>();
+                for (int i = 0; i < base.size(); i++) {
+                    if ((i % CANCEL_CHECK_INTERVAL) == 0 && gen != generation.get()) return;
+                    SearchEntry e = base.get(i);
+                    if (e.key.contains(q)) result.add(e);
+                }
+            }
+            lastQuery = q;
+            lastResult = result;
+
+            List<BillListItem> items = q.isEmpty()
+                    ? sectionize(result, dayTotals)
+                    : sectionizeMatches(result);
+            if (gen == generation.get()) visibleItems.postValue(items);
+        });
+    }
+
+    /**
+     * Merges the rows (newest first) with the day totals (newest first) in one pass.
+     */
+    private static List<BillListItem> sectionize(List<SearchEntry> rows, List<DayTotal> totals) {
+        List<BillListItem> items = new ArrayList<>(rows.size() + Math.min(rows.size(), totals.size()));
+        int t = 0;
+        long dayStart = 0;
+        long dayEnd = 0;
+        for (SearchEntry e : rows) {
+            long ts = e.bill.timestamp;
+            if (items.isEmpty() || ts < dayStart || ts >= dayEnd) {
+                while (t < totals.size() && totals.get(t).dayStart > ts) t++;
+                DayTotal day = t < totals.size() ? totals.get(t) : null;
+                dayStart = day != null ? day.dayStart : DateTimeUtils.startOfDay(ts);
+                dayEnd = DateTimeUtils.endExclusiveOfDay(dayStart);
+                if (ts >= dayEnd) {
+                    // Totals haven't caught up with this bill's day yet; they will shortly
+                    day = null;
+                    dayStart = DateTimeUtils.startOfDay(ts);
+                    dayEnd = DateTimeUtils.endExclusiveOfDay(dayStart);
+                }
+                items.add(BillListItem.header(
+                        dayStart,
+                        DateTimeUtils.formatDate(dayStart),
+                        day != null ? MoneyUtils.formatCny(day.total) : null));
+            }
+            items.add(BillListItem.bill(e.bill, e.text));
+        }
+        return items;
+    }
+
+    /**
+     * Search results: each header totals the rows under it, since the day's aggregate
+     * would include bills that didn't match.
+     */
+    private static List<BillListItem> sectionizeMatches(List<SearchEntry> rows) {
+        List<BillListItem> items = new ArrayList<>(rows.size() + Math.min(rows.size(), 32));
+        int header = -1;
+        long dayStart = 0;
+        long dayEnd = 0;
+        long dayCents = 0;
+        for (SearchEntry e : rows) {
+            long ts = e.bill.timestamp;
+            if (header < 0 || ts < dayStart || ts >= dayEnd) {
+                if (header >= 0) items.set(header, matchesHeader(dayStart, dayCents));
+                dayStart = DateTimeUtils.startOfDay(ts);
+                dayEnd = DateTimeUtils.endExclusiveOfDay(dayStart);
+                dayCents = 0;
+                header = items.size();
+                items.add(null);
+            }
+            dayCents += Math.round(e.bill.amount * 100);
+            items.add(BillListItem.bill(e.bill, e.text));
+        }
+        if (header >= 0) items.set(header, matchesHeader(dayStart, dayCents));
+        return items;
+    }
+
+    private static BillListItem matchesHeader(long dayStart, long cents) {
+        return BillListItem.header(dayStart, DateTimeUtils.formatDate(dayStart),
+                MoneyUtils.formatCny(cents / 100.0));
+    }
+
+    /**
+     * Usually one bill changed: every other bill keeps its search key and row text.
+     */
+    private static List<SearchEntry> buildEntries(List<Bill> bills, List<SearchEntry> previous) {
+        LongSparseArray<SearchEntry> byId = new LongSparseArray<>(previous.size());
+        for (SearchEntry e : previous) byId.put(e.bill.id, e);
+
+        List<SearchEntry> list = new ArrayList<>(bills.size());
+        for (Bill b : bills) {
+            SearchEntry old = byId.get(b.id);
+            list.add(old != null ? old.reload(b) : new SearchEntry(b));
+        }
+        return list;
+    }
+
+    private static String nonNull(String s) {
+        return s == null ? "" : s;
+    }
+
+    @Override
+    protected void onCleared() {
+        mainHandler.removeCallbacks(debouncedSearch);
+        searchExecutor.shutdownNow();
+        super.onCleared();
+    }
 }
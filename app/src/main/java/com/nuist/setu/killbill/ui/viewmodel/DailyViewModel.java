@@ -10,6 +10,8 @@ import androidx.lifecycle.Transformations;
 
 import com.nuist.setu.killbill.data.Bill;
 import com.nuist.setu.killbill.data.BillRepository;
+import com.nuist.setu.killbill.data.CategoryStats;
+import com.nuist.setu.killbill.data.DaySnapshot;
 import com.nuist.setu.killbill.util.DateTimeUtils;
 
 import java.util.List;
@@ -23,8 +25,8 @@ public class DailyViewModel extends AndroidViewModel {
 
     private final MutableLiveData<Long> selectedDayStart = new MutableLiveData<>();
 
-    private final LiveData<List<Bill>> bills;
-    private final LiveData<Double> totalAmount;
+    private final LiveData<DaySnapshot> snapshot;
+    private final LiveData<List<CategoryStats>> anomalies;
 
     public DailyViewModel(@NonNull Application application) {
         super(application);
@@ -33,19 +35,12 @@ public class DailyViewModel extends AndroidViewModel {
         long now = System.currentTimeMillis();
         selectedDayStart.setValue(DateTimeUtils.startOfDay(now));
 
-        bills = Transformations.switchMap(selectedDayStart, start ->
-                repository.getBillsBetween(start, DateTimeUtils.endExclusiveOfDay(start))
+        // Rows and summary from one transaction, re-queried whenever the table changes
+        snapshot = Transformations.switchMap(selectedDayStart, start ->
+                repository.getDaySnapshot(start, DateTimeUtils.endExclusiveOfDay(start))
         );
 
-        totalAmount = Transformations.map(bills, list -> {
-            double sum = 0;
-            if (list != null) {
-                for (Bill b : list) {
-                    sum += b.amount;
-                }
-            }
-            return sum;
-        });
+        anomalies = Transformations.switchMap(selectedDayStart, repository::getAnomaliesAt);
     }
 
     public LiveData<Long> getSelectedDayStart() {
@@ -56,12 +51,15 @@ public class DailyViewModel extends AndroidViewModel {
         selectedDayStart.setValue(DateTimeUtils.startOfDay(timestamp));
     }
 
-    public LiveData<List<Bill>> getBills() {
-        return bills;
+    /**
+     * The selected day's bills with total, count and category breakdown.
+     */
+    public LiveData<DaySnapshot> getSnapshot() {
+        return snapshot;
     }
 
-    public LiveData<Double> getTotalAmount() {
-        return totalAmount;
+    public LiveData<List<CategoryStats>> getAnomalies() {
+        return anomalies;
     }
 
     public void insert(Bill bill) {
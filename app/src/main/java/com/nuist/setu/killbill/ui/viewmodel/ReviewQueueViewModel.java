@@ -0,0 +1,41 @@
+package com.nuist.setu.killbill.ui.viewmodel;
+
+import android.app.Application;
+
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import androidx.lifecycle.LiveData;
+
+import com.nuist.setu.killbill.data.Bill;
+import com.nuist.setu.killbill.data.BillRepository;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * ViewModel for the queue of auto-recorded bills awaiting confirmation.
+ */
+public class ReviewQueueViewModel extends AndroidViewModel {
+
+    private final BillRepository repository;
+
+    private final LiveData<List<Bill>> pending;
+
+    public ReviewQueueViewModel(@NonNull Application application) {
+        super(application);
+        repository = BillRepository.getInstance(application);
+        pending = repository.getBillsNeedingReview();
+    }
+
+    public LiveData<List<Bill>> getPending() {
+        return pending;
+    }
+
+    public void confirm(Bill bill) {
+        repository.markReviewed(Collections.singletonList(bill.id));
+    }
+
+    public void confirmAll() {
+        repository.markAllReviewed();
+    }
+}
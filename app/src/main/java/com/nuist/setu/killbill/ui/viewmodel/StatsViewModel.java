@@ -5,24 +5,101 @@ import android.app.Application;
 import androidx.annotation.NonNull;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.LiveData;
+import androidx.lifecycle.MediatorLiveData;
 import androidx.lifecycle.MutableLiveData;
 import androidx.lifecycle.Transformations;
 
+import com.nuist.setu.killbill.R;
 import com.nuist.setu.killbill.data.BillRepository;
 import com.nuist.setu.killbill.data.CategoryTotal;
+import com.nuist.setu.killbill.data.YearDayTotal;
 import com.nuist.setu.killbill.util.DateTimeUtils;
+import com.nuist.setu.killbill.util.MoneyUtils;
 
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * ViewModel for monthly statistics.
+ *
+ * The pie chart gets a ready-made {@link PieModel}: the slices come pre-grouped from SQL
+ * (top categories plus "Other categories"), percentages and labels are computed on a
+ * background executor, and a model equal to the previous one is not published at all.
+ * The year heatmap's totals come from one grouped query per year.
  */
 public class StatsViewModel extends AndroidViewModel {
 
+    // Slices besides the "Other categories" one
+    private static final int PIE_TOP_CATEGORIES = 5;
+
+    /**
+     * What the pie chart shows; immutable, compared by value.
+     */
+    public static final class PieModel {
+        public static final PieModel EMPTY = new PieModel(new String[0], new float[0], 0, "No Data");
+
+        public final String[] labels;
+        public final float[] percents;
+        public final double total;
+        public final String centerText;
+
+        PieModel(String[] labels, float[] percents, double total, String centerText) {
+            this.labels = labels;
+            this.percents = percents;
+            this.total = total;
+            this.centerText = centerText;
+        }
+
+        public boolean isEmpty() {
+            return labels.length == 0;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PieModel)) return false;
+            PieModel other = (PieModel) o;
+            return total == other.total
+                    && Arrays.equals(labels, other.labels)
+                    && Arrays.equals(percents, other.percents);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(labels) + Arrays.hashCode(percents);
+        }
+    }
+
+    /**
+     * Spending per day of one year, for the heatmap.
+     */
+    public static final class YearHeat {
+        public final long yearStart;
+        /**
+         * Index 0 = January 1st.
+         */
+        public final double[] dayTotals;
+
+        YearHeat(long yearStart, double[] dayTotals) {
+            this.yearStart = yearStart;
+            this.dayTotals = dayTotals;
+        }
+    }
+
     private final BillRepository repository;
 
     private final MutableLiveData<Long> selectedMonthStart = new MutableLiveData<>();
     private final LiveData<List<CategoryTotal>> categoryTotals;
+    private final MediatorLiveData<PieModel> pieModel = new MediatorLiveData<>();
+    private final MediatorLiveData<YearHeat> yearHeat = new MediatorLiveData<>();
+
+    private final ExecutorService chartExecutor = Executors.newSingleThreadExecutor();
+    // Chart executor only
+    private PieModel lastPieModel;
 
     public StatsViewModel(@NonNull Application application) {
         super(application);
@@ -34,6 +111,39 @@ public class StatsViewModel extends AndroidViewModel {
         categoryTotals = Transformations.switchMap(selectedMonthStart, start ->
                 repository.getCategoryTotalsBetween(start, DateTimeUtils.endExclusiveOfMonth(start))
         );
+
+        String otherLabel = application.getString(R.string.stats_other_categories);
+        LiveData<List<CategoryTotal>> pieSlices = Transformations.switchMap(selectedMonthStart, start ->
+                repository.getTopCategoryTotalsBetween(start, DateTimeUtils.endExclusiveOfMonth(start),
+                        PIE_TOP_CATEGORIES, otherLabel)
+        );
+        pieModel.addSource(pieSlices, slices -> {
+            List<CategoryTotal> copy = slices == null ? Collections.emptyList() : slices;
+            chartExecutor.execute(() -> {
+                PieModel model = buildPieModel(copy);
+                if (model.equals(lastPieModel)) return;
+                lastPieModel = model;
+                pieModel.postValue(model);
+            });
+        });
+
+        observeYear();
+    }
+
+    /**
+     * Follows the selected month's year; only re-queried when the year changes.
+     */
+    private void observeYear() {
+        LiveData<Long> yearStart = Transformations.distinctUntilChanged(
+                Transformations.map(selectedMonthStart, DateTimeUtils::startOfYear));
+        LiveData<List<YearDayTotal>> days = Transformations.switchMap(yearStart, start ->
+                repository.getYearDayTotals(start, DateTimeUtils.endExclusiveOfYear(start)));
+        yearHeat.addSource(days, list -> {
+            Long start = yearStart.getValue();
+            if (start == null) return;
+            List<YearDayTotal> copy = list == null ? Collections.emptyList() : list;
+            chartExecutor.execute(() -> yearHeat.postValue(buildYearHeat(start, copy)));
+        });
     }
 
     public LiveData<Long> getSelectedMonthStart() {
@@ -47,4 +157,48 @@ public class StatsViewModel extends AndroidViewModel {
     public LiveData<List<CategoryTotal>> getCategoryTotals() {
         return categoryTotals;
     }
+
+    public LiveData<YearHeat> getYearHeat() {
+        return yearHeat;
+    }
+
+    /**
+     * Only emits when what the chart shows actually changes.
+     */
+    public LiveData<PieModel> getPieModel() {
+        return pieModel;
+    }
+
+    private static YearHeat buildYearHeat(long yearStart, List<YearDayTotal> days) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(yearStart);
+        double[] totals = new double[c.getActualMaximum(Calendar.DAY_OF_YEAR)];
+        for (YearDayTotal d : days) {
+            if (d.dayOfYear >= 0 && d.dayOfYear < totals.length) totals[d.dayOfYear] = d.total;
+        }
+        return new YearHeat(yearStart, totals);
+    }
+
+    private static PieModel buildPieModel(List<CategoryTotal> slices) {
+        double sum = 0;
+        for (CategoryTotal ct : slices) {
+            sum += ct.total;
+        }
+        if (slices.isEmpty() || sum <= 0) return PieModel.EMPTY;
+
+        String[] labels = new String[slices.size()];
+        float[] percents = new float[slices.size()];
+        for (int i = 0; i < slices.size(); i++) {
+            CategoryTotal ct = slices.get(i);
+            labels[i] = ct.category;
+            percents[i] = (float) (ct.total / sum * 100.0);
+        }
+        return new PieModel(labels, percents, sum, "Expenses for this month\n" + MoneyUtils.formatCny(sum));
+    }
+
+    @Override
+    protected void onCleared() {
+        chartExecutor.shutdownNow();
+        super.onCleared();
+    }
 }
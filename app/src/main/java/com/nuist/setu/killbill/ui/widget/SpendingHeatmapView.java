@@ -0,0 +1,268 @@
+package com.nuist.setu.killbill.ui.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.android.material.color.MaterialColors;
+
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Calendar heatmap of one year's daily spending: one column per week (Monday on top),
+ * one cell per day, darker for more spending.
+ *
+ * Cells are at least {@link #MIN_CELL_DP} square so a day can be tapped; the year is then
+ * wider than the screen and the view is meant to sit in a HorizontalScrollView, which it
+ * scrolls to today's week when a year is shown.
+ *
+ * Cells are rendered into a cached bitmap; {@link #onDraw} only blits it. When new totals
+ * arrive for the same year and the colour scale is unchanged, only the cells whose level
+ * changed are repainted into the bitmap, so a redraw costs one bitmap draw however many
+ * cells there are.
+ */
+public class SpendingHeatmapView extends View {
+
+    public interface OnDayClickListener {
+        void onDayClick(long dayStart);
+    }
+
+    private static final int MAX_COLUMNS = 54;
+    private static final int ROWS = 7;
+    private static final int LEVELS = 5; // 0 = no spending
+    private static final float GAP_FRACTION = 0.15f;
+    // The whole cell, gap included, is its touch target
+    private static final int MIN_CELL_DP = 24;
+
+    private final Paint paint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final int[] levelColors = new int[LEVELS];
+    private final RectF cellRect = new RectF();
+    private final Rect revealRect = new Rect();
+    private final float minCellPx;
+
+    private long yearStart = -1;
+    private int firstRow;     // weekday row of January 1st
+    private double[] totals = new double[0];
+    private int[] levels = new int[0];
+    private double scale;     // spending that maps to the darkest level
+
+    private Bitmap bitmap;
+    private float cellSize;
+
+    @Nullable
+    private OnDayClickListener listener;
+
+    public SpendingHeatmapView(Context context) {
+        this(context, null);
+    }
+
+    public SpendingHeatmapView(Context context, @Nullable AttributeSet attrs) {
+        super(context, attrs);
+        minCellPx = MIN_CELL_DP * getResources().getDisplayMetrics().density;
+
+        int primary = MaterialColors.getColor(this, com.google.android.material.R.attr.colorPrimary, Color.GREEN);
+        int onSurface = MaterialColors.getColor(this, com.google.android.material.R.attr.colorOnSurface, Color.GRAY);
+        levelColors[0] = MaterialColors.compositeARGBWithAlpha(onSurface, 0x1F);
+        for (int i = 1; i < LEVELS; i++) {
+            levelColors[i] = MaterialColors.compositeARGBWithAlpha(primary, 255 * i / (LEVELS - 1));
+        }
+    }
+
+    public void setOnDayClickListener(@Nullable OnDayClickListener listener) {
+        this.listener = listener;
+        setClickable(listener != null);
+    }
+
+    /**
+     * @param yearStart local midnight of January 1st
+     * @param dayTotals spending per day of year, index 0 = January 1st
+     */
+    public void setData(long yearStart, @NonNull double[] dayTotals) {
+        double newScale = scaleFor(dayTotals);
+        boolean sameLayout = yearStart == this.yearStart && dayTotals.length == totals.length;
+        boolean sameColours = sameLayout && newScale == scale;
+
+        if (!sameLayout) {
+            this.yearStart = yearStart;
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(yearStart);
+            firstRow = (c.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+            levels = new int[dayTotals.length];
+            Arrays.fill(levels, -1);
+            post(this::revealToday);
+        }
+        totals = dayTotals.clone();
+        scale = newScale;
+
+        if (bitmap == null) return;
+        if (!sameColours) {
+            Arrays.fill(levels, -1);
+            renderAll();
+            invalidate();
+            return;
+        }
+
+        // Usually a single bill changed: repaint just its cell
+        Canvas canvas = new Canvas(bitmap);
+        boolean changed = false;
+        for (int day = 0; day < totals.length; day++) {
+            int level = levelFor(totals[day]);
+            if (level == levels[day]) continue;
+            levels[day] = level;
+            drawCell(canvas, day, level);
+            changed = true;
+        }
+        if (changed) invalidate();
+    }
+
+    /**
+     * Fills the available width, but with cells no smaller than {@link #MIN_CELL_DP}; inside
+     * a HorizontalScrollView (unspecified width) that makes the view wider than the screen.
+     */
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        int available = MeasureSpec.getSize(widthMeasureSpec);
+        float cell = Math.max(minCellPx, (available - horizontalPadding) / (float) MAX_COLUMNS);
+        int width = resolveSize((int) Math.ceil(cell * MAX_COLUMNS) + horizontalPadding, widthMeasureSpec);
+        cell = Math.min(cell, (width - horizontalPadding) / (float) MAX_COLUMNS);
+        int height = (int) Math.ceil(cell * ROWS) + getPaddingTop() + getPaddingBottom();
+        setMeasuredDimension(width, resolveSize(height, heightMeasureSpec));
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (bitmap != null) bitmap.recycle();
+        bitmap = null;
+        if (w <= 0 || h <= 0) return;
+
+        cellSize = Math.min((w - getPaddingLeft() - getPaddingRight()) / (float) MAX_COLUMNS,
+                (h - getPaddingTop() - getPaddingBottom()) / (float) ROWS);
+        bitmap = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
+        Arrays.fill(levels, -1);
+        renderAll();
+        post(this::revealToday);
+    }
+
+    @Override
+    protected void onDraw(@NonNull Canvas canvas) {
+        if (bitmap != null) canvas.drawBitmap(bitmap, 0, 0, null);
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (listener == null) return super.onTouchEvent(event);
+        if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+            int day = dayAt(event.getX(), event.getY());
+            if (day >= 0) {
+                performClick();
+                listener.onDayClick(dayStartOf(day));
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean performClick() {
+        return super.performClick();
+    }
+
+    /**
+     * Asks a scrolling parent to bring today's week into view, if it's in the shown year.
+     */
+    private void revealToday() {
+        if (cellSize <= 0 || yearStart < 0) return;
+        int day = dayOf(System.currentTimeMillis());
+        if (day < 0 || day >= totals.length) return;
+        cellBounds(day, cellRect);
+        cellRect.roundOut(revealRect);
+        requestRectangleOnScreen(revealRect, true);
+    }
+
+    private void renderAll() {
+        if (bitmap == null) return;
+        bitmap.eraseColor(Color.TRANSPARENT);
+        Canvas canvas = new Canvas(bitmap);
+        for (int day = 0; day < totals.length; day++) {
+            levels[day] = levelFor(totals[day]);
+            drawCell(canvas, day, levels[day]);
+        }
+    }
+
+    private void drawCell(Canvas canvas, int day, int level) {
+        cellBounds(day, cellRect);
+        float gap = cellSize * GAP_FRACTION;
+        paint.setColor(levelColors[level]);
+        // Clear first: a lighter level must not blend with the old darker one
+        canvas.save();
+        canvas.clipRect(cellRect);
+        canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+        canvas.restore();
+        canvas.drawRoundRect(cellRect.left + gap / 2, cellRect.top + gap / 2,
+                cellRect.right - gap / 2, cellRect.bottom - gap / 2, gap, gap, paint);
+    }
+
+    private void cellBounds(int day, RectF out) {
+        int slot = firstRow + day;
+        float left = getPaddingLeft() + (slot / ROWS) * cellSize;
+        float top = getPaddingTop() + (slot % ROWS) * cellSize;
+        out.set(left, top, left + cellSize, top + cellSize);
+    }
+
+    private int dayAt(float x, float y) {
+        if (cellSize <= 0) return -1;
+        int col = (int) ((x - getPaddingLeft()) / cellSize);
+        int row = (int) ((y - getPaddingTop()) / cellSize);
+        if (col < 0 || row < 0 || row >= ROWS) return -1;
+        int day = col * ROWS + row - firstRow;
+        return day >= 0 && day < totals.length ? day : -1;
+    }
+
+    private int dayOf(long timestamp) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(timestamp);
+        Calendar start = Calendar.getInstance();
+        start.setTimeInMillis(yearStart);
+        if (c.get(Calendar.YEAR) != start.get(Calendar.YEAR)) return -1;
+        return c.get(Calendar.DAY_OF_YEAR) - 1;
+    }
+
+    private long dayStartOf(int day) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(yearStart);
+        c.add(Calendar.DAY_OF_YEAR, day);
+        return c.getTimeInMillis();
+    }
+
+    private int levelFor(double total) {
+        if (total <= 0 || scale <= 0) return 0;
+        int level = (int) Math.ceil(total / scale * (LEVELS - 1));
+        return Math.max(1, Math.min(LEVELS - 1, level));
+    }
+
+    /**
+     * The year's largest day rounded up to a power of two, so a new bill rarely changes
+     * the scale (and with it every cell's colour).
+     */
+    private static double scaleFor(double[] dayTotals) {
+        double max = 0;
+        for (double t : dayTotals) max = Math.max(max, t);
+        if (max <= 0) return 0;
+        double scale = 1;
+        while (scale < max) scale *= 2;
+        return scale;
+    }
+}
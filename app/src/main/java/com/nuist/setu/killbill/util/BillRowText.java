@@ -0,0 +1,56 @@
+package com.nuist.setu.killbill.util;
+
+import androidx.annotation.NonNull;
+
+import com.nuist.setu.killbill.data.Bill;
+
+/**
+ * The display strings of a bill row, formatted once (off the main thread where the list is
+ * built) so binding a row only sets text.
+ *
+ * The time depends on the time zone: {@link #isCurrent} turns false once
+ * {@link DateTimeUtils} has dropped its zone-dependent state, and the row is re-formatted.
+ * {@link #isCurrentFor} also checks that the bill's amount and time are still the ones
+ * formatted, so a list can keep the text of bills that didn't change across reloads.
+ */
+public final class BillRowText {
+
+    @NonNull
+    public final String amount;
+    @NonNull
+    public final String time;
+
+    private final double sourceAmount;
+    private final long sourceTimestamp;
+    private final int generation;
+
+    private BillRowText(@NonNull String amount, @NonNull String time,
+                        double sourceAmount, long sourceTimestamp, int generation) {
+        this.amount = amount;
+        this.time = time;
+        this.sourceAmount = sourceAmount;
+        this.sourceTimestamp = sourceTimestamp;
+        this.generation = generation;
+    }
+
+    /**
+     * Safe on any thread.
+     */
+    @NonNull
+    public static BillRowText of(@NonNull Bill bill) {
+        int generation = DateTimeUtils.generation();
+        return new BillRowText(MoneyUtils.formatCny(bill.amount),
+                DateTimeUtils.formatTime(bill.timestamp), bill.amount, bill.timestamp, generation);
+    }
+
+    public boolean isCurrent() {
+        return generation == DateTimeUtils.generation();
+    }
+
+    /**
+     * True if this is still what {@link #of} would return for {@code bill}.
+     */
+    public boolean isCurrentFor(@NonNull Bill bill) {
+        return sourceAmount == bill.amount && sourceTimestamp == bill.timestamp && isCurrent();
+    }
+}
@@ -0,0 +1,82 @@
+package com.nuist.setu.killbill.util;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.net.Uri;
+import android.os.Bundle;
+
+import androidx.annotation.NonNull;
+import androidx.preference.PreferenceManager;
+
+/**
+ * Keys and accessors for the auto-capture settings (see res/xml/preferences.xml).
+ *
+ * The settings screen writes them in the UI process, but only the notification listener in
+ * the :listener process reads them. SharedPreferences can't be shared between processes
+ * reliably, so the UI also hands every change to {@link CaptureSettingsProvider}, which runs
+ * in the :listener process and keeps that process's own copy; the listener reads only that.
+ */
+public final class CapturePreferences {
+
+    public static final String KEY_DIRECT_RECORD = "auto_capture_direct_record";
+    public static final String KEY_RECORD_CORPUS = "auto_capture_record_corpus";
+
+    // :listener process only
+    private static final String LISTENER_PREFS = "capture_settings";
+
+    static final String METHOD_PUT = "put";
+    static final String EXTRA_VALUE = "value";
+
+    private CapturePreferences() {}
+
+    /**
+     * When enabled, detected payments are written to the database straight away
+     * (flagged for review) instead of posting a "Tap to record" notification.
+     * :listener process only.
+     */
+    public static boolean isDirectRecordEnabled(Context context) {
+        return get(context, KEY_DIRECT_RECORD);
+    }
+
+    /**
+     * When enabled, raw notifications from watched apps are saved for offline parser replay.
+     * :listener process only.
+     */
+    public static boolean isCorpusRecordingEnabled(Context context) {
+        return get(context, KEY_RECORD_CORPUS);
+    }
+
+    /**
+     * UI process: forwards a changed setting to the :listener process (starting it if needed).
+     */
+    public static void publish(@NonNull Context context, @NonNull String key, boolean value) {
+        if (!isKey(key)) return;
+        Bundle extras = new Bundle();
+        extras.putBoolean(EXTRA_VALUE, value);
+        try {
+            context.getContentResolver().call(providerUri(context), METHOD_PUT, key, extras);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    static boolean isKey(String key) {
+        return KEY_DIRECT_RECORD.equals(key) || KEY_RECORD_CORPUS.equals(key);
+    }
+
+    static SharedPreferences listenerPrefs(Context context) {
+        return context.getSharedPreferences(LISTENER_PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static boolean get(Context context, String key) {
+        SharedPreferences prefs = listenerPrefs(context);
+        if (prefs.contains(key)) return prefs.getBoolean(key, false);
+        // Never forwarded (set before the provider existed): the settings file as this
+        // process first loaded it from disk
+        return PreferenceManager.getDefaultSharedPreferences(context).getBoolean(key, false);
+    }
+
+    private static Uri providerUri(Context context) {
+        return Uri.parse("content://" + context.getPackageName() + ".capturesettings");
+    }
+}
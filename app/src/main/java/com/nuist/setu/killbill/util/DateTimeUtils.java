@@ -1,70 +1,339 @@
 package com.nuist.setu.killbill.util;
 
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
 import java.util.Locale;
 
 /**
  * Date/time helpers based on {@link java.util.Calendar} (works without desugaring).
+ *
+ * Day/week/month/year boundaries are looked up by binary search in an immutable table of
+ * every local day and month start of the years seen so far, so bucketing a timestamp
+ * allocates nothing once its year is in the table. Tables are built with Calendar (DST
+ * and all), published through a volatile field and safe to read from any thread.
+ *
+ * Formatting uses one set of SimpleDateFormats per thread. Both the tables and the
+ * formatters follow the default time zone: {@link #registerTimeZoneListener} drops them
+ * when it changes.
  */
 public final class DateTimeUtils {
 
-    private static final SimpleDateFormat DATE_FMT = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA);
-    private static final SimpleDateFormat MONTH_FMT = new SimpleDateFormat("yyyy-MM", Locale.CHINA);
-    private static final SimpleDateFormat TIME_FMT = new SimpleDateFormat("HH:mm", Locale.CHINA);
-    private static final SimpleDateFormat DATETIME_FMT = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.CHINA);
+    // Years further out than this from the cached ones go through Calendar uncached
+    private static final int MAX_TABLE_YEARS = 50;
+
+    /**
+     * Local day and month starts of [firstYear, firstYear + years), each array ending with
+     * the start of the following year.
+     */
+    private static final class Table {
+        final int firstYear;
+        final int years;
+        final long[] dayStarts;
+        final long[] monthStarts;
+        // Days between the Monday on or before January 1st of firstYear and that day
+        final int firstDayFromMonday;
+
+        Table(int firstYear, int years, long[] dayStarts, long[] monthStarts, int firstDayFromMonday) {
+            this.firstYear = firstYear;
+            this.years = years;
+            this.dayStarts = dayStarts;
+            this.monthStarts = monthStarts;
+            this.firstDayFromMonday = firstDayFromMonday;
+        }
+
+        boolean covers(long timestamp) {
+            return timestamp >= dayStarts[0] && timestamp < dayStarts[dayStarts.length - 1];
+        }
+
+        int dayIndex(long timestamp) {
+            int i = Arrays.binarySearch(dayStarts, timestamp);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        int monthIndex(long timestamp) {
+            int i = Arrays.binarySearch(monthStarts, timestamp);
+            return i >= 0 ? i : -i - 2;
+        }
+
+        static Table build(int firstYear, int lastYear) {
+            int years = lastYear - firstYear + 1;
+            Calendar c = Calendar.getInstance();
+
+            int days = 0;
+            for (int y = firstYear; y <= lastYear; y++) {
+                c.clear();
+                c.set(y, Calendar.JANUARY, 1);
+                days += c.getActualMaximum(Calendar.DAY_OF_YEAR);
+            }
+
+            long[] dayStarts = new long[days + 1];
+            long[] monthStarts = new long[years * 12 + 1];
+            int d = 0;
+            int m = 0;
+            for (int y = firstYear; y <= lastYear; y++) {
+                c.clear();
+                c.set(y, Calendar.JANUARY, 1);
+                int daysInYear = c.getActualMaximum(Calendar.DAY_OF_YEAR);
+                // Cleared each time: the previous getTimeInMillis normalized the hour fields,
+                // which aren't 0 on a day whose midnight falls into a DST gap
+                for (int day = 1; day <= daysInYear; day++) {
+                    c.clear();
+                    c.set(y, Calendar.JANUARY, day);
+                    dayStarts[d++] = c.getTimeInMillis();
+                }
+                for (int month = Calendar.JANUARY; month <= Calendar.DECEMBER; month++) {
+                    c.clear();
+                    c.set(y, month, 1);
+                    monthStarts[m++] = c.getTimeInMillis();
+                }
+            }
+            c.clear();
+            c.set(lastYear + 1, Calendar.JANUARY, 1);
+            dayStarts[d] = c.getTimeInMillis();
+            monthStarts[m] = dayStarts[d];
+
+            c.clear();
+            c.set(firstYear, Calendar.JANUARY, 1);
+            int firstDayFromMonday = (c.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+            return new Table(firstYear, years, dayStarts, monthStarts, firstDayFromMonday);
+        }
+    }
+
+    private static final class Formatters {
+        final int generation;
+        final SimpleDateFormat date = new SimpleDateFormat("yyyy-MM-dd", Locale.CHINA);
+        final SimpleDateFormat month = new SimpleDateFormat("yyyy-MM", Locale.CHINA);
+        final SimpleDateFormat time = new SimpleDateFormat("HH:mm", Locale.CHINA);
+        final SimpleDateFormat dateTime = new SimpleDateFormat("yyyy-MM-dd HH:mm", Locale.CHINA);
+        final Date scratch = new Date();
+
+        Formatters(int generation) {
+            this.generation = generation;
+        }
+    }
+
+    private static volatile Table table;
+    // Bumped when the time zone changes; per-thread formatters older than this are rebuilt
+    private static volatile int generation;
+    private static final ThreadLocal<Formatters> FORMATTERS = new ThreadLocal<>();
+
+    private static boolean listening;
 
     private DateTimeUtils() {}
 
+    /**
+     * Drops cached boundaries and formatters when the device's time zone changes.
+     * Call once per process.
+     */
+    public static synchronized void registerTimeZoneListener(Context context) {
+        if (listening) return;
+        listening = true;
+        ContextCompat.registerReceiver(context.getApplicationContext(), new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context ctx, Intent intent) {
+                invalidate();
+            }
+        }, new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED), ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
+
+    /**
+     * Forgets everything derived from the current time zone.
+     */
+    public static void invalidate() {
+        table = null;
+        generation++;
+    }
+
+    /**
+     * Changes whenever {@link #invalidate} runs, so strings formatted earlier can be told
+     * apart from ones that would come out differently now.
+     */
+    public static int generation() {
+        return generation;
+    }
+
     public static long startOfDay(long timestamp) {
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(timestamp);
-        c.set(Calendar.HOUR_OF_DAY, 0);
-        c.set(Calendar.MINUTE, 0);
-        c.set(Calendar.SECOND, 0);
-        c.set(Calendar.MILLISECOND, 0);
-        return c.getTimeInMillis();
+        Table t = tableFor(timestamp);
+        if (t == null) return computeStartOfDay(timestamp);
+        return t.dayStarts[t.dayIndex(timestamp)];
     }
 
     public static long endExclusiveOfDay(long timestamp) {
+        Table t = tableFor(timestamp);
+        if (t == null) {
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(computeStartOfDay(timestamp));
+            c.add(Calendar.DAY_OF_MONTH, 1);
+            return c.getTimeInMillis();
+        }
+        return t.dayStarts[t.dayIndex(timestamp) + 1];
+    }
+
+    /**
+     * Weeks start on Monday regardless of locale.
+     */
+    public static long startOfWeek(long timestamp) {
+        Table t = tableFor(timestamp);
+        if (t != null) {
+            int day = t.dayIndex(timestamp);
+            int monday = day - (t.firstDayFromMonday + day) % 7;
+            if (monday >= 0) return t.dayStarts[monday];
+        }
         Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(startOfDay(timestamp));
-        c.add(Calendar.DAY_OF_MONTH, 1);
+        c.setTimeInMillis(computeStartOfDay(timestamp));
+        int daysFromMonday = (c.get(Calendar.DAY_OF_WEEK) + 5) % 7;
+        c.add(Calendar.DAY_OF_MONTH, -daysFromMonday);
         return c.getTimeInMillis();
     }
 
-    public static long startOfMonth(long timestamp) {
+    public static long endExclusiveOfWeek(long timestamp) {
+        Table t = tableFor(timestamp);
+        if (t != null) {
+            int day = t.dayIndex(timestamp);
+            int nextMonday = day - (t.firstDayFromMonday + day) % 7 + 7;
+            if (nextMonday < t.dayStarts.length) return t.dayStarts[nextMonday];
+        }
         Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(timestamp);
-        c.set(Calendar.DAY_OF_MONTH, 1);
-        c.set(Calendar.HOUR_OF_DAY, 0);
-        c.set(Calendar.MINUTE, 0);
-        c.set(Calendar.SECOND, 0);
-        c.set(Calendar.MILLISECOND, 0);
+        c.setTimeInMillis(startOfWeek(timestamp));
+        c.add(Calendar.DAY_OF_MONTH, 7);
         return c.getTimeInMillis();
     }
 
+    public static long startOfMonth(long timestamp) {
+        Table t = tableFor(timestamp);
+        if (t == null) return computeStartOfMonth(timestamp);
+        return t.monthStarts[t.monthIndex(timestamp)];
+    }
+
     public static long endExclusiveOfMonth(long timestamp) {
-        Calendar c = Calendar.getInstance();
-        c.setTimeInMillis(startOfMonth(timestamp));
-        c.add(Calendar.MONTH, 1);
-        return c.getTimeInMillis();
+        Table t = tableFor(timestamp);
+        if (t == null) {
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(computeStartOfMonth(timestamp));
+            c.add(Calendar.MONTH, 1);
+            return c.getTimeInMillis();
+        }
+        return t.monthStarts[t.monthIndex(timestamp) + 1];
+    }
+
+    public static long startOfYear(long timestamp) {
+        Table t = tableFor(timestamp);
+        if (t == null) {
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(computeStartOfMonth(timestamp));
+            c.set(Calendar.MONTH, Calendar.JANUARY);
+            return c.getTimeInMillis();
+        }
+        int month = t.monthIndex(timestamp);
+        return t.monthStarts[month - month % 12];
+    }
+
+    public static long endExclusiveOfYear(long timestamp) {
+        Table t = tableFor(timestamp);
+        if (t == null) {
+            Calendar c = Calendar.getInstance();
+            c.setTimeInMillis(startOfYear(timestamp));
+            c.add(Calendar.YEAR, 1);
+            return c.getTimeInMillis();
+        }
+        int month = t.monthIndex(timestamp);
+        return t.monthStarts[month - month % 12 + 12];
     }
 
     public static String formatDate(long timestamp) {
-        return DATE_FMT.format(new Date(timestamp));
+        Formatters f = formatters();
+        f.scratch.setTime(timestamp);
+        return f.date.format(f.scratch);
     }
 
     public static String formatMonth(long timestamp) {
-        return MONTH_FMT.format(new Date(timestamp));
+        Formatters f = formatters();
+        f.scratch.setTime(timestamp);
+        return f.month.format(f.scratch);
     }
 
     public static String formatTime(long timestamp) {
-        return TIME_FMT.format(new Date(timestamp));
+        Formatters f = formatters();
+        f.scratch.setTime(timestamp);
+        return f.time.format(f.scratch);
     }
 
     public static String formatDateTime(long timestamp) {
-        return DATETIME_FMT.format(new Date(timestamp));
+        Formatters f = formatters();
+        f.scratch.setTime(timestamp);
+        return f.dateTime.format(f.scratch);
+    }
+
+    private static Formatters formatters() {
+        int gen = generation;
+        Formatters f = FORMATTERS.get();
+        if (f == null || f.generation != gen) {
+            // Picks up the current default time zone
+            f = new Formatters(gen);
+            FORMATTERS.set(f);
+        }
+        return f;
+    }
+
+    /**
+     * The cached table if it covers {@code timestamp}, otherwise a new one that also covers
+     * its year; null if that year is too far from the cached ones (or BC).
+     */
+    @Nullable
+    private static Table tableFor(long timestamp) {
+        Table t = table;
+        if (t != null && t.covers(timestamp)) return t;
+
+        int gen = generation;
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(timestamp);
+        if (c.get(Calendar.ERA) != GregorianCalendar.AD) return null;
+        int year = c.get(Calendar.YEAR);
+
+        int first = year;
+        int last = year;
+        if (t != null) {
+            first = Math.min(t.firstYear, year);
+            last = Math.max(t.firstYear + t.years - 1, year);
+            // Far outside the cached years: computed directly rather than swapping tables back and forth
+            if (last - first + 1 > MAX_TABLE_YEARS) return null;
+        }
+        Table built = Table.build(first, last);
+        if (!built.covers(timestamp)) return null;
+        // Built for the old time zone if it changed meanwhile: use it once, don't publish it
+        if (gen == generation) table = built;
+        return built;
+    }
+
+    private static long computeStartOfDay(long timestamp) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(timestamp);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
+    }
+
+    private static long computeStartOfMonth(long timestamp) {
+        Calendar c = Calendar.getInstance();
+        c.setTimeInMillis(timestamp);
+        c.set(Calendar.DAY_OF_MONTH, 1);
+        c.set(Calendar.HOUR_OF_DAY, 0);
+        c.set(Calendar.MINUTE, 0);
+        c.set(Calendar.SECOND, 0);
+        c.set(Calendar.MILLISECOND, 0);
+        return c.getTimeInMillis();
     }
 }
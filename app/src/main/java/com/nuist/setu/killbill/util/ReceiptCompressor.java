@@ -0,0 +1,180 @@
+package com.nuist.setu.killbill.util;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.os.Handler;
+import android.os.Looper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Shrinks freshly captured receipt photos in place.
+ *
+ * Camera apps write full-sensor JPEGs (often 5-12 MB). The photo is decoded straight to at
+ * most {@link #MAX_LONG_SIDE_PX} on its long side, rotated upright according to its EXIF
+ * orientation, re-encoded as JPEG and renamed over the original, so the URI stored in the
+ * bill keeps working. The original is kept if re-encoding wouldn't make it smaller.
+ */
+public final class ReceiptCompressor {
+
+    public interface Callback {
+        /**
+         * Main thread. {@code result} is null if the photo couldn't be processed.
+         */
+        void onDone(@Nullable Result result);
+    }
+
+    public static final class Result {
+        public final long bytesBefore;
+        public final long bytesAfter;
+
+        Result(long bytesBefore, long bytesAfter) {
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+        }
+
+        public long bytesSaved() {
+            return bytesBefore - bytesAfter;
+        }
+    }
+
+    // Keeps receipt text legible; a 12 MP photo ends up around 3 MP
+    private static final int MAX_LONG_SIDE_PX = 2048;
+    private static final int JPEG_QUALITY = 85;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final Handler MAIN = new Handler(Looper.getMainLooper());
+
+    private ReceiptCompressor() {}
+
+    public static void compressAsync(@NonNull File photo, @NonNull Callback callback) {
+        EXECUTOR.execute(() -> {
+            Result result = compress(photo);
+            MAIN.post(() -> callback.onDone(result));
+        });
+    }
+
+    /**
+     * Background thread only.
+     */
+    @Nullable
+    public static Result compress(@NonNull File photo) {
+        long before = photo.length();
+        if (before <= 0) return null;
+
+        Bitmap upright = decodeUpright(photo);
+        if (upright == null) return null;
+
+        // Same directory, so the rename below is atomic
+        File tmp = new File(photo.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            if (!upright.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out)) {
+                throw new IOException("JPEG encoding failed");
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return null;
+        } finally {
+            upright.recycle();
+        }
+
+        long after = tmp.length();
+        if (after <= 0 || after >= before || !tmp.renameTo(photo)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return new Result(before, before);
+        }
+        return new Result(before, after);
+    }
+
+    @Nullable
+    private static Bitmap decodeUpright(File photo) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(photo.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        // Power-of-two subsampling first, then let the decoder scale the rest of the way,
+        // so the full-resolution bitmap never exists in memory
+        int longSide = Math.max(bounds.outWidth, bounds.outHeight);
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = 1;
+        while (longSide / (opts.inSampleSize * 2) >= MAX_LONG_SIDE_PX) {
+            opts.inSampleSize *= 2;
+        }
+        int sampledLongSide = longSide / opts.inSampleSize;
+        if (sampledLongSide > MAX_LONG_SIDE_PX) {
+            opts.inScaled = true;
+            opts.inDensity = sampledLongSide;
+            opts.inTargetDensity = MAX_LONG_SIDE_PX;
+        }
+
+        Bitmap bitmap = BitmapFactory.decodeFile(photo.getPath(), opts);
+        if (bitmap == null) return null;
+
+        Matrix matrix = orientationMatrix(readOrientation(photo));
+        if (matrix == null) return bitmap;
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) bitmap.recycle();
+        return rotated;
+    }
+
+    private static int readOrientation(File photo) {
+        try {
+            return new ExifInterface(photo.getPath())
+                    .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    /**
+     * @return the transform that makes the pixels upright (the re-encoded file has no EXIF),
+     * or null if none is needed
+     */
+    @Nullable
+    static Matrix orientationMatrix(int orientation) {
+        Matrix m = new Matrix();
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                m.setScale(-1, 1);
+                return m;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                m.setRotate(180);
+                return m;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                m.setRotate(180);
+                m.postScale(-1, 1);
+                return m;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                m.setRotate(90);
+                m.postScale(-1, 1);
+                return m;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                m.setRotate(90);
+                return m;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                m.setRotate(-90);
+                m.postScale(-1, 1);
+                return m;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                m.setRotate(-90);
+                return m;
+            default:
+                return null;
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package com.nuist.setu.killbill.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.exifinterface.media.ExifInterface;
+
+import com.nuist.setu.killbill.R;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Receipt images for the UI, never decoded at full resolution and never on the main thread.
+ *
+ * Thumbnails (for list rows) are generated once from the original photo, kept on disk in
+ * files/receipt_thumbs_v2 and served through a bounded in-memory LRU cache. Previews (for
+ * the editor) are downsampled to the requested size and not cached. Both are turned upright
+ * according to the photo's EXIF orientation, which the original keeps whenever
+ * {@link ReceiptCompressor} didn't rewrite it.
+ *
+ * Loads are bound to an ImageView through its tag: a recycled view that has been re-bound
+ * to another receipt (or to none) in the meantime ignores the stale result.
+ */
+public final class ReceiptThumbnails {
+
+    // Covers a 48dp row thumbnail at xxxhdpi
+    private static final int THUMB_SIZE_PX = 192;
+    private static final int THUMB_QUALITY = 80;
+    private static final String THUMB_DIR = "receipt_thumbs_v2";
+    // Thumbnails written before EXIF orientation was applied, possibly sideways
+    private static final String LEGACY_THUMB_DIR = "receipt_thumbs";
+
+    private static volatile ReceiptThumbnails INSTANCE;
+
+    private final Context context;
+    private final File thumbDir;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService decodeExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private ReceiptThumbnails(Context context) {
+        this.context = context;
+        this.thumbDir = new File(context.getFilesDir(), THUMB_DIR);
+
+        // 1/32 of the heap: a couple of hundred thumbnails on most devices
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 32);
+        this.memoryCache = new LruCache<String, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount() / 1024;
+            }
+        };
+
+        decodeExecutor.execute(() -> deleteRecursively(new File(context.getFilesDir(), LEGACY_THUMB_DIR)));
+    }
+
+    public static ReceiptThumbnails getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (ReceiptThumbnails.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new ReceiptThumbnails(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Shows the receipt's thumbnail; a memory-cache hit is set synchronously, anything else
+     * shows the placeholder until the disk thumbnail is decoded (or generated).
+     */
+    public void loadThumbnail(@NonNull ImageView view, @NonNull String receiptUri) {
+        view.setTag(R.id.tag_receipt_uri, receiptUri);
+        Bitmap cached = memoryCache.get(receiptUri);
+        if (cached != null) {
+            view.setImageBitmap(cached);
+            return;
+        }
+
+        view.setImageResource(R.drawable.ic_receipt);
+        decodeExecutor.execute(() -> {
+            // An earlier request for the same receipt may have finished meanwhile
+            Bitmap bitmap = memoryCache.get(receiptUri);
+            if (bitmap == null) bitmap = loadOrCreateThumbnail(receiptUri);
+            deliver(view, receiptUri, bitmap);
+        });
+    }
+
+    /**
+     * Shows the receipt downsampled by a power of two, keeping its shorter side at least
+     * {@code sizePx}.
+     */
+    public void loadPreview(@NonNull ImageView view, @NonNull String receiptUri, int sizePx) {
+        view.setTag(R.id.tag_receipt_uri, receiptUri);
+        view.setImageDrawable(null);
+        decodeExecutor.execute(() -> deliver(view, receiptUri, decodeSampled(Uri.parse(receiptUri), sizePx)));
+    }
+
+    /**
+     * Forgets any pending load for the view, e.g. when its row no longer has a receipt.
+     */
+    public void clear(@NonNull ImageView view) {
+        view.setTag(R.id.tag_receipt_uri, null);
+        view.setImageDrawable(null);
+    }
+
+    /**
+     * Writes the thumbnail for a newly captured photo right away, so the list never has to
+     * touch the original.
+     */
+    public void prepare(@NonNull String receiptUri) {
+        decodeExecutor.execute(() -> {
+            if (memoryCache.get(receiptUri) == null) loadOrCreateThumbnail(receiptUri);
+        });
+    }
+
+    /**
+     * Drops the cached thumbnail (memory and disk), e.g. after the original was rewritten.
+     */
+    public void invalidate(@NonNull String receiptUri) {
+        memoryCache.remove(receiptUri);
+        decodeExecutor.execute(() -> {
+            //noinspection ResultOfMethodCallIgnored
+            thumbFile(receiptUri).delete();
+        });
+    }
+
+    private void deliver(ImageView view, String receiptUri, @Nullable Bitmap bitmap) {
+        if (bitmap == null) return;
+        mainHandler.post(() -> {
+            if (receiptUri.equals(view.getTag(R.id.tag_receipt_uri))) {
+                view.setImageBitmap(bitmap);
+            }
+        });
+    }
+
+    /**
+     * Background thread only.
+     */
+    @Nullable
+    private Bitmap loadOrCreateThumbnail(String receiptUri) {
+        File file = thumbFile(receiptUri);
+        Bitmap bitmap = file.exists() ? BitmapFactory.decodeFile(file.getPath()) : null;
+        if (bitmap == null) {
+            bitmap = decodeSampled(Uri.parse(receiptUri), THUMB_SIZE_PX);
+            if (bitmap == null) return null;
+            bitmap = scaleDown(bitmap, THUMB_SIZE_PX);
+            writeAtomically(bitmap, file);
+        }
+        memoryCache.put(receiptUri, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Decodes with the largest power-of-two sample size that keeps the smaller side at
+     * least {@code targetPx}, i.e. at most 4x the pixels actually needed, and rotates the
+     * result upright.
+     */
+    @Nullable
+    private Bitmap decodeSampled(Uri uri, int targetPx) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            if (in == null) return null;
+            BitmapFactory.decodeStream(in, null, bounds);
+        } catch (IOException | SecurityException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        int shortSide = Math.min(bounds.outWidth, bounds.outHeight);
+        BitmapFactory.Options opts = new BitmapFactory.Options();
+        opts.inSampleSize = 1;
+        while (shortSide / (opts.inSampleSize * 2) >= targetPx) {
+            opts.inSampleSize *= 2;
+        }
+        Bitmap bitmap;
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            if (in == null) return null;
+            bitmap = BitmapFactory.decodeStream(in, null, opts);
+        } catch (IOException | SecurityException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (bitmap == null) return null;
+
+        Matrix matrix = ReceiptCompressor.orientationMatrix(readOrientation(uri));
+        if (matrix == null) return bitmap;
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) bitmap.recycle();
+        return rotated;
+    }
+
+    private int readOrientation(Uri uri) {
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            if (in == null) return ExifInterface.ORIENTATION_NORMAL;
+            return new ExifInterface(in)
+                    .getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        } catch (IOException | SecurityException e) {
+            e.printStackTrace();
+            return ExifInterface.ORIENTATION_NORMAL;
+        }
+    }
+
+    private static Bitmap scaleDown(Bitmap bitmap, int targetPx) {
+        int shortSide = Math.min(bitmap.getWidth(), bitmap.getHeight());
+        if (shortSide <= targetPx) return bitmap;
+        float scale = targetPx / (float) shortSide;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.round(bitmap.getWidth() * scale), Math.round(bitmap.getHeight() * scale), true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    private static void writeAtomically(Bitmap bitmap, File file) {
+        File dir = file.getParentFile();
+        if (dir != null && !dir.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            dir.mkdirs();
+        }
+        // Readers never see a half-written thumbnail
+        File tmp = new File(file.getPath() + ".tmp");
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, THUMB_QUALITY, out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(file)) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+        }
+    }
+
+    private static void deleteRecursively(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) deleteRecursively(child);
+        }
+        //noinspection ResultOfMethodCallIgnored
+        file.delete();
+    }
+
+    private File thumbFile(String receiptUri) {
+        return new File(thumbDir, sha1Hex(receiptUri) + ".jpg");
+    }
+
+    private static String sha1Hex(String s) {
+        if (TextUtils.isEmpty(s)) return "empty";
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(s.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(s.hashCode());
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package com.nuist.setu.killbill.service.parser;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The original regex amount extraction, kept only as a baseline for {@link ReplayRunner}:
+ *   (?:prefix)\s*([0-9]+(?:\.[0-9]{1,2})?)   then   ([0-9]+(?:\.[0-9]{1,2})?)\s*(?:suffix)
+ * followed by Double.parseDouble. Patterns are compiled once per token list (the old code
+ * compiled them on every notification, which would only flatter the scanner).
+ *
+ * Not thread-safe.
+ */
+final class RegexAmountBaseline implements PaymentParser.AmountExtractor {
+
+    private static final String NUMBER = "([0-9]+(?:\\.[0-9]{1,2})?)";
+
+    private final Map<String[], Pattern> prefixPatterns = new HashMap<>();
+    private final Map<String[], Pattern> suffixPatterns = new HashMap<>();
+
+    @Override
+    public long findAfterPrefix(CharSequence s, String[] prefixes) {
+        if (s == null || prefixes.length == 0) return AmountScanner.NOT_FOUND;
+        Pattern p = prefixPatterns.get(prefixes);
+        if (p == null) {
+            p = Pattern.compile("(?:" + alternation(prefixes) + ")\\s*" + NUMBER);
+            prefixPatterns.put(prefixes, p);
+        }
+        return find(p, s);
+    }
+
+    @Override
+    public long findBeforeSuffix(CharSequence s, String[] suffixes) {
+        if (s == null || suffixes.length == 0) return AmountScanner.NOT_FOUND;
+        Pattern p = suffixPatterns.get(suffixes);
+        if (p == null) {
+            p = Pattern.compile(NUMBER + "\\s*(?:" + alternation(suffixes) + ")");
+            suffixPatterns.put(suffixes, p);
+        }
+        return find(p, s);
+    }
+
+    private static long find(Pattern p, CharSequence s) {
+        Matcher m = p.matcher(s);
+        if (!m.find()) return AmountScanner.NOT_FOUND;
+        try {
+            return Math.round(Double.parseDouble(m.group(1)) * 100);
+        } catch (NumberFormatException e) {
+            return AmountScanner.NOT_FOUND;
+        }
+    }
+
+    private static String alternation(String[] tokens) {
+        StringBuilder sb = new StringBuilder();
+        for (String t : tokens) {
+            if (sb.length() > 0) sb.append('|');
+            sb.append(Pattern.quote(t));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,277 @@
+package com.nuist.setu.killbill.service.parser;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays a corpus of captured notifications ({@link CaptureRecord}, JSON lines) through
+ * {@link PaymentParser} on a plain JVM, no device needed. Lives in the test source set so
+ * neither it nor the regex baseline ships in the APK.
+ *
+ * Reports, for labelled records, precision and recall of "this is a spend of X" (a spend
+ * with the wrong amount counts as both a false positive and a false negative), then
+ * time and allocated bytes per record over the whole corpus. Everything is reported twice:
+ * with {@link AmountScanner} and with the old regex path ({@link RegexAmountBaseline}).
+ *
+ * Timing is end to end through {@link PaymentParser}, so it includes keyword matching and
+ * note/merchant building, and the regex path builds fewer notes because it recognises fewer
+ * payments. Both paths are warmed up first, then measured in alternating rounds (swapping
+ * which goes first) and reported as the median and range over the rounds. One JVM run on a
+ * laptop still varies by tens of percent; compare medians across several runs.
+ *
+ * <pre>
+ * javac -encoding UTF-8 -cp json.jar -d out \
+ *     app/src/main/java/com/nuist/setu/killbill/service/parser/*.java \
+ *     app/src/test/java/com/nuist/setu/killbill/service/parser/*.java
+ * java -cp out:json.jar com.nuist.setu.killbill.service.parser.ReplayRunner \
+ *     app/src/main/assets/payment_rules.json app/replay/seed_corpus.jsonl \
+ *     [--iterations 2000] [--rounds 7]
+ * </pre>
+ * json.jar is any org.json build (e.g. org.json:json from Maven Central).
+ */
+public final class ReplayRunner {
+
+    private static final int DEFAULT_ITERATIONS = 2000;
+    private static final int DEFAULT_ROUNDS = 7;
+
+    // Printed at the end so the JIT can't drop the measured work
+    private static long checksum;
+
+    private ReplayRunner() {}
+
+    public static void main(String[] args) throws IOException, JSONException {
+        if (args.length < 2) {
+            System.err.println("usage: ReplayRunner <rules.json> <corpus.jsonl>... [--iterations N] [--rounds N]");
+            System.exit(2);
+        }
+
+        int iterations = DEFAULT_ITERATIONS;
+        int rounds = DEFAULT_ROUNDS;
+        List<String> corpusFiles = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            if ("--iterations".equals(args[i]) && i + 1 < args.length) {
+                iterations = Integer.parseInt(args[++i]);
+            } else if ("--rounds".equals(args[i]) && i + 1 < args.length) {
+                rounds = Integer.parseInt(args[++i]);
+            } else {
+                corpusFiles.add(args[i]);
+            }
+        }
+
+        PaymentRuleSet rules = PaymentRuleLoader.compile(readFile(args[0]));
+        List<CaptureRecord> records = new ArrayList<>();
+        for (String file : corpusFiles) {
+            records.addAll(readCorpus(file));
+        }
+        System.out.printf(Locale.US, "%d rules, %d records%n", rules.size(), records.size());
+
+        PaymentParser scanner = new PaymentParser();
+        PaymentParser regex = new PaymentParser(new RegexAmountBaseline());
+
+        reportAccuracy("scanner", scanner, rules, records, true);
+        reportAccuracy("regex", regex, rules, records, false);
+        reportTiming(scanner, regex, rules, records, iterations, rounds);
+    }
+
+    private static void reportAccuracy(String label, PaymentParser parser, PaymentRuleSet rules,
+                                       List<CaptureRecord> records, boolean printMismatches) {
+        int truePositives = 0;
+        int falsePositives = 0;
+        int falseNegatives = 0;
+        int labelled = 0;
+
+        for (int i = 0; i < records.size(); i++) {
+            CaptureRecord r = records.get(i);
+            if (!r.isLabelled()) continue;
+            labelled++;
+
+            long found = spendCents(parser, rules, r);
+            if (r.expectedCents > 0 && found == r.expectedCents) {
+                truePositives++;
+                continue;
+            }
+            if (found > 0) falsePositives++;
+            if (r.expectedCents > 0) falseNegatives++;
+            if (printMismatches && (found > 0 || r.expectedCents > 0)) {
+                System.out.printf(Locale.US, "  MISMATCH #%d %s expected=%d found=%d: %s%n",
+                        i, r.packageName, r.expectedCents, found, r.text);
+            }
+        }
+
+        System.out.printf(Locale.US, "[%s] labelled=%d tp=%d fp=%d fn=%d precision=%.3f recall=%.3f%n",
+                label, labelled, truePositives, falsePositives, falseNegatives,
+                ratio(truePositives, truePositives + falsePositives),
+                ratio(truePositives, truePositives + falseNegatives));
+    }
+
+    private static void reportTiming(PaymentParser scanner, PaymentParser regex, PaymentRuleSet rules,
+                                     List<CaptureRecord> records, int iterations, int rounds) {
+        if (records.isEmpty() || iterations <= 0 || rounds <= 0) return;
+
+        // Warm-up so the JIT has compiled both paths before measuring
+        for (int i = 0; i < Math.max(1, iterations / 4); i++) {
+            checksum += replayOnce(scanner, rules, records);
+            checksum += replayOnce(regex, rules, records);
+        }
+
+        double[] scannerUs = new double[rounds];
+        double[] regexUs = new double[rounds];
+        long[] scannerBytes = new long[1];
+        long[] regexBytes = new long[1];
+        for (int round = 0; round < rounds; round++) {
+            if (round % 2 == 0) {
+                scannerUs[round] = timeRound(scanner, rules, records, iterations, scannerBytes);
+                regexUs[round] = timeRound(regex, rules, records, iterations, regexBytes);
+            } else {
+                regexUs[round] = timeRound(regex, rules, records, iterations, regexBytes);
+                scannerUs[round] = timeRound(scanner, rules, records, iterations, scannerBytes);
+            }
+        }
+
+        long replayed = (long) rounds * iterations * records.size();
+        printTiming("scanner", scannerUs, scannerBytes[0], replayed);
+        printTiming("regex", regexUs, regexBytes[0], replayed);
+        System.out.printf(Locale.US, "median regex/scanner time ratio=%.2f over %d rounds of %d iterations%n",
+                median(regexUs) / median(scannerUs), rounds, iterations);
+        System.out.println("checksum=" + checksum);
+    }
+
+    /**
+     * @param bytes accumulates allocated bytes, or is set to -1 if they can't be measured
+     * @return microseconds per record
+     */
+    private static double timeRound(PaymentParser parser, PaymentRuleSet rules,
+                                    List<CaptureRecord> records, int iterations, long[] bytes) {
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            checksum += replayOnce(parser, rules, records);
+        }
+        long elapsed = System.nanoTime() - start;
+        long bytesAfter = allocatedBytes();
+
+        if (bytesBefore < 0 || bytesAfter < 0 || bytes[0] < 0) {
+            bytes[0] = -1;
+        } else {
+            bytes[0] += bytesAfter - bytesBefore;
+        }
+        return elapsed / 1000.0 / ((long) iterations * records.size());
+    }
+
+    private static void printTiming(String label, double[] us, long bytes, long replayed) {
+        double[] sorted = us.clone();
+        Arrays.sort(sorted);
+        System.out.printf(Locale.US, "[%s] time=%.2f us/record median (%.2f..%.2f)%n",
+                label, median(us), sorted[0], sorted[sorted.length - 1]);
+        if (bytes >= 0) {
+            System.out.printf(Locale.US, "[%s] allocated=%.1f bytes/record%n", label, bytes / (double) replayed);
+        } else {
+            System.out.println("[" + label + "] allocated=n/a (JVM has no per-thread allocation counter)");
+        }
+    }
+
+    private static double median(double[] values) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int mid = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+    }
+
+    private static long replayOnce(PaymentParser parser, PaymentRuleSet rules, List<CaptureRecord> records) {
+        long sum = 0;
+        for (int i = 0; i < records.size(); i++) {
+            long cents = spendCents(parser, rules, records.get(i));
+            if (cents > 0) sum += cents;
+        }
+        return sum;
+    }
+
+    /**
+     * Mirrors the capture service: unknown packages and income are not spends.
+     *
+     * @return the spend in cents, or 0
+     */
+    private static long spendCents(PaymentParser parser, PaymentRuleSet rules, CaptureRecord r) {
+        PaymentRule rule = rules.forPackage(r.packageName);
+        if (rule == null) return 0;
+        ParsedPayment p = parser.parse(rule, r.title, r.text, r.bigText);
+        if (p == null || p.income) return 0;
+        return p.cents;
+    }
+
+    private static double ratio(int num, int denom) {
+        return denom == 0 ? 1.0 : num / (double) denom;
+    }
+
+    /**
+     * Current thread's allocated bytes via com.sun.management.ThreadMXBean, looked up
+     * reflectively (java.lang.management isn't part of the Android SDK).
+     *
+     * @return -1 if unsupported
+     */
+    private static long allocatedBytes() {
+        try {
+            Object bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Method m = Class.forName("com.sun.management.ThreadMXBean")
+                    .getMethod("getThreadAllocatedBytes", long.class);
+            return (Long) m.invoke(bean, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static List<CaptureRecord> readCorpus(String path) throws IOException, JSONException {
+        List<CaptureRecord> out = new ArrayList<>();
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new FileInputStream(path), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                out.add(parseRecord(line));
+            }
+        }
+        return out;
+    }
+
+    private static CaptureRecord parseRecord(String line) throws JSONException {
+        JSONObject o = new JSONObject(line);
+        return new CaptureRecord(
+                o.getString("package"),
+                optNullableString(o, "title"),
+                optNullableString(o, "text"),
+                optNullableString(o, "bigText"),
+                o.optLong("postTime", 0),
+                o.optLong("expectedCents", CaptureRecord.UNLABELLED));
+    }
+
+    private static String optNullableString(JSONObject o, String key) {
+        return o.isNull(key) ? null : o.optString(key);
+    }
+
+    private static String readFile(String path) throws IOException {
+        try (InputStream in = new FileInputStream(path)) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                out.write(buf, 0, n);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+}